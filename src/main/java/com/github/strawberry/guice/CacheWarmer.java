@@ -0,0 +1,123 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+import fj.data.Option;
+
+/**
+ * Collects the annotated fields of the types that an
+ * {@link com.google.inject.Injector} encounters, and loads their values into
+ * the cache in parallel batches while the {@code Injector} is being created.
+ * This happens through a requested injection (see
+ * {@link com.google.inject.Binder#requestInjection(Object)}), by which time
+ * the types of all explicit bindings have been encountered. Types that are
+ * only encountered later (such as those of just-in-time bindings) are loaded
+ * when they are first injected, as usual. Warming up only helps if the cache
+ * stores values: a cache that does not (such as one with a maximum size of 0)
+ * discards the loaded values right away.
+ *
+ * @author Wiehann Matthysen
+ */
+final class CacheWarmer {
+
+    private static final Logger LOGGER = Logger.getLogger(CacheWarmer.class.getName());
+
+    private final LoadingCache<Field, Option> cache;
+    private final int batchSize;
+    private final int parallelism;
+    private final Set<Field> fields = Collections.newSetFromMap(new ConcurrentHashMap<Field, Boolean>());
+    private volatile WarmUpReport report;
+
+    CacheWarmer(LoadingCache<Field, Option> cache, int batchSize, int parallelism) {
+        this.cache = cache;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    void add(Field field) {
+        this.fields.add(field);
+    }
+
+    WarmUpReport report() {
+        return this.report;
+    }
+
+    @Inject
+    void warmUp() {
+        List<Field> toLoad = ImmutableList.copyOf(this.fields);
+        List<List<Field>> batches = Lists.partition(toLoad, this.batchSize);
+        long start = System.nanoTime();
+        int failures = 0;
+        if (!batches.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, batches.size()),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-warmup-%d").build());
+            try {
+                List<Future<Integer>> results = Lists.newArrayList();
+                for (List<Field> batch : batches) {
+                    results.add(executor.submit(load(batch)));
+                }
+                for (Future<Integer> result : results) {
+                    failures += result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        this.report = new WarmUpReport(toLoad.size(), batches.size(), failures, System.nanoTime() - start);
+        LOGGER.info(this.report.toString());
+    }
+
+    private Callable<Integer> load(final List<Field> batch) {
+        return new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                try {
+                    cache.getAll(batch);
+                    return 0;
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, String.format("Could not warm up fields: %s.", batch), e);
+                    return batch.size();
+                }
+            }
+        };
+    }
+}
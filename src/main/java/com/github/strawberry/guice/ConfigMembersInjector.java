@@ -19,6 +19,7 @@ package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
 
+import com.github.strawberry.util.FieldMetrics;
 import com.google.common.cache.LoadingCache;
 import com.google.inject.MembersInjector;
 
@@ -32,15 +33,20 @@ final class ConfigMembersInjector<T> implements MembersInjector<T> {
 
     private final LoadingCache<Field, Option> cache;
     private final Field field;
+    private final FieldMetrics metrics;
 
-    ConfigMembersInjector(LoadingCache<Field, Option> cache, Field field) {
+    ConfigMembersInjector(LoadingCache<Field, Option> cache, Field field, FieldMetrics metrics) {
         this.cache = cache;
+        this.metrics = metrics;
         this.field = field;
         this.field.setAccessible(true);
     }
 
     @Override
     public void injectMembers(final T object) {
+        if (this.metrics != null) {
+            this.metrics.statsOf(this.field).requested();
+        }
         Option value = this.cache.getUnchecked(this.field);
         try {
             Config annotation = this.field.getAnnotation(Config.class);
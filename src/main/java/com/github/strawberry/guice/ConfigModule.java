@@ -18,10 +18,13 @@
 package com.github.strawberry.guice;
 
 import com.github.strawberry.guice.config.ConfigLoader;
+import com.github.strawberry.util.FieldMetrics;
+import com.github.strawberry.util.FieldStats;
 import java.lang.reflect.Field;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
@@ -30,6 +33,7 @@ import com.google.inject.matcher.Matchers;
 import fj.data.Option;
 import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 /**
  * {@code RedisModule} is responsible for setting up the custom injections that
@@ -91,7 +95,12 @@ import java.util.Properties;
  */
 public final class ConfigModule extends AbstractModule {
 
+    private static final Logger LOGGER = Logger.getLogger(ConfigModule.class.getName());
+
     private final LoadingCache<Field, Option> cache;
+    private final boolean caching;
+    private CacheWarmer warmer;
+    private FieldMetrics metrics;
 
     /**
      * Initializes a newly created {@code RedisModule} with the given cache of
@@ -101,6 +110,7 @@ public final class ConfigModule extends AbstractModule {
      */
     public ConfigModule(LoadingCache<Field, Option> cache) {
         this.cache = cache;
+        this.caching = true;
     }
 
     /**
@@ -117,11 +127,67 @@ public final class ConfigModule extends AbstractModule {
         
         // It achieves this by creating a cache that never stores it's values
         // (maximum size of 0).
-        this.cache = CacheBuilder.newBuilder().maximumSize(0).build(new ConfigLoader(properties));
+        this.cache = CacheBuilder.newBuilder().maximumSize(0).recordStats().build(new ConfigLoader(properties));
+        this.caching = false;
+    }
+
+    /**
+     * Loads the values of all the {@link Config}-annotated fields of the types
+     * that the {@link com.google.inject.Injector} encounters while it is
+     * being created, before the {@code Injector} is returned. The fields are
+     * loaded into the cache in batches of the given size, on the given number
+     * of threads. Warming up is only useful if the cache actually stores
+     * values, so it is skipped with {@link #ConfigModule(Map)}, which loads
+     * every field again whenever it is injected.
+     * @param batchSize The maximum number of fields to load per batch.
+     * @param parallelism The maximum number of batches to load at once.
+     * @return This module.
+     */
+    public ConfigModule warmUp(int batchSize, int parallelism) {
+        if (!this.caching) {
+            LOGGER.warning("Warm-up is skipped, as field values are not cached.");
+            return this;
+        }
+        this.warmer = new CacheWarmer(this.cache, batchSize, parallelism);
+        return this;
+    }
+
+    /**
+     * @return The report of the warm-up (see {@link #warmUp(int, int)}), or
+     * {@code null} if the cache has not been warmed up (yet).
+     */
+    public WarmUpReport warmUpReport() {
+        return this.warmer != null ? this.warmer.report() : null;
+    }
+
+    /**
+     * Counts the number of times that the value of every annotated field is
+     * requested for injection in the given registry (see
+     * {@link FieldStats#getRequests()}). Together with the loads that the
+     * {@link ConfigLoader} (see
+     * {@link ConfigLoader#ConfigLoader(Map, FieldMetrics)}) records in the
+     * same registry, this gives the hit rate of every field.
+     * @param metrics The registry of field statistics.
+     * @return This module.
+     */
+    public ConfigModule recordStats(FieldMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return The statistics of the cache of field values. These are only
+     * recorded if the cache was built with {@link CacheBuilder#recordStats()}.
+     */
+    public CacheStats cacheStats() {
+        return this.cache.stats();
     }
 
     @Override
     protected void configure() {
-        bindListener(Matchers.any(), new ConfigTypeListener(this.cache));
+        bindListener(Matchers.any(), new ConfigTypeListener(this.cache, this.warmer, this.metrics));
+        if (this.warmer != null) {
+            requestInjection(this.warmer);
+        }
     }
 }
@@ -19,6 +19,7 @@ package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
 
+import com.github.strawberry.util.FieldMetrics;
 import com.google.common.cache.LoadingCache;
 import com.google.inject.TypeLiteral;
 import com.google.inject.spi.TypeEncounter;
@@ -33,16 +34,23 @@ import fj.data.Option;
 final class ConfigTypeListener implements TypeListener {
 
     private final LoadingCache<Field, Option> cache;
+    private final CacheWarmer warmer;
+    private final FieldMetrics metrics;
 
-    ConfigTypeListener(LoadingCache<Field, Option> cache) {
+    ConfigTypeListener(LoadingCache<Field, Option> cache, CacheWarmer warmer, FieldMetrics metrics) {
         this.cache = cache;
+        this.warmer = warmer;
+        this.metrics = metrics;
     }
 
     @Override
     public <T> void hear(TypeLiteral<T> typeLiteral, TypeEncounter<T> typeEncounter) {
         for (Field field : typeLiteral.getRawType().getDeclaredFields()) {
             if (field.isAnnotationPresent(Config.class)) {
-                typeEncounter.register(new ConfigMembersInjector<T>(this.cache, field));
+                if (this.warmer != null) {
+                    this.warmer.add(field);
+                }
+                typeEncounter.register(new ConfigMembersInjector<T>(this.cache, field, this.metrics));
             }
         }
     }
@@ -71,4 +71,54 @@ public @interface Redis {
      * candidate value (see {@link Redis#allowNull()}).
      */
     boolean forceUpdate() default false;
+
+    /**
+     * The field of the hash that is stored at the key (see
+     * {@link Redis#value()}) to inject, instead of the whole hash (see
+     * {@code HGET}). The projected fields of all the fields that are loaded
+     * together (such as the fields of a class) that read the same hash are
+     * read with a single {@code HMGET}. If the key-pattern matches more than
+     * one key, a map or collection field is injected with the values of the
+     * hash field of every matching hash.
+     */
+    String field() default "";
+
+    /**
+     * The index of the first element to inject from a list or sorted set (see
+     * {@code LRANGE} and {@code ZRANGE}). Negative indices count from the end,
+     * with -1 being the last element. If {@link Redis#minScore()} or
+     * {@link Redis#maxScore()} is given, this is instead the number of
+     * matching elements of a sorted set to skip (the offset of
+     * {@code ZRANGEBYSCORE ... LIMIT}), and can not be negative.
+     */
+    long start() default 0;
+
+    /**
+     * The index of the last element to inject from a list or sorted set (see
+     * {@link Redis#start()}). If {@link Redis#minScore()} or
+     * {@link Redis#maxScore()} is given, at most {@code end - start + 1}
+     * matching elements are injected, or all of them if this is negative.
+     */
+    long end() default -1;
+
+    /**
+     * The lowest score of the elements of a sorted set to inject (see
+     * {@code ZRANGEBYSCORE}), for example {@code "10"}, {@code "(10"} to
+     * exclude 10 itself or {@code "-inf"}.
+     */
+    String minScore() default "-inf";
+
+    /**
+     * The highest score of the elements of a sorted set to inject (see
+     * {@link Redis#minScore()}).
+     */
+    String maxScore() default "+inf";
+
+    /**
+     * If true, the elements of a sorted set are ranked from the highest score
+     * to the lowest (see {@code ZREVRANGE} and {@code ZREVRANGEBYSCORE}), so
+     * that, for example, {@code start = 0} and {@code end = 99} inject the
+     * top 100 elements.
+     */
+    boolean reverse() default false;
 }
@@ -0,0 +1,77 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutionException;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.ForwardingLoadingCache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+
+import fj.data.Option;
+
+/**
+ * Keeps the values of fields whose keys are absent from Redis out of a caching
+ * {@link LoadingCache}. The {@link RedisLoader} keeps the fact that they are
+ * absent instead, under its own (shorter) expiry, so that they are neither
+ * loaded from Redis on every injection nor cached as long as the values that
+ * are present. Their default values are then created anew on every injection,
+ * so that no mutable default is shared between instances.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisAbsentCache extends ForwardingLoadingCache.SimpleForwardingLoadingCache<Field, Option> {
+
+    private final RedisLoader loader;
+
+    RedisAbsentCache(LoadingCache<Field, Option> cache, RedisLoader loader) {
+        super(cache);
+        this.loader = loader;
+    }
+
+    @Override
+    public Option get(Field field) throws ExecutionException {
+        Option value = super.get(field);
+        evictIfAbsent(field);
+        return value;
+    }
+
+    @Override
+    public Option getUnchecked(Field field) {
+        Option value = super.getUnchecked(field);
+        evictIfAbsent(field);
+        return value;
+    }
+
+    @Override
+    public ImmutableMap<Field, Option> getAll(Iterable<? extends Field> fields) throws ExecutionException {
+        ImmutableMap<Field, Option> values = super.getAll(fields);
+        for (Field field : values.keySet()) {
+            evictIfAbsent(field);
+        }
+        return values;
+    }
+
+    private void evictIfAbsent(Field field) {
+        if (this.loader.isAbsent(field)) {
+            delegate().invalidate(field);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.strawberry.redis.KeyPattern;
+import com.github.strawberry.redis.KeyPatterns;
+import com.github.strawberry.redis.KeyspaceNotifier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import fj.data.Option;
+
+/**
+ * Invalidates the cached values of exactly those fields whose key-pattern
+ * matches a key that was changed in Redis. It also wraps the actual
+ * {@link CacheLoader}, so that a value that is being loaded while a key that
+ * matches its key-pattern is changed is loaded again. Otherwise such a
+ * (possibly stale) value would be stored in the cache after the invalidation
+ * had already taken place. Changes to other keys do not affect a load.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisCacheInvalidator extends CacheLoader<Field, Option> implements KeyspaceNotifier.Listener {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final CacheLoader<Field, Option> loader;
+    private final KeyPatterns patterns;
+    private final Set<Load> loads = Sets.newSetFromMap(new ConcurrentHashMap<Load, Boolean>());
+    private volatile List<Cache<Field, ?>> caches = ImmutableList.of();
+
+    RedisCacheInvalidator(CacheLoader<Field, Option> loader, KeyPatterns patterns) {
+        this.loader = loader;
+        this.patterns = patterns;
+    }
+
+    /**
+     * The key-patterns of the fields that are being loaded, and whether a
+     * key that matches any of them was changed during the current attempt.
+     */
+    private static final class Load {
+
+        private final List<KeyPattern> patterns = Lists.newArrayList();
+        private volatile boolean changed;
+
+        Load(Iterable<? extends Field> fields, KeyPatterns patterns) {
+            for (Field field : fields) {
+                this.patterns.add(patterns.of(field));
+            }
+        }
+
+        boolean matches(String key) {
+            for (KeyPattern pattern : this.patterns) {
+                if (pattern.matches(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Sets the caches of which the entries should be invalidated. The first
+     * cache is expected to use this invalidator as its loader.
+     */
+    void invalidates(List<? extends Cache<Field, ?>> caches) {
+        this.caches = ImmutableList.copyOf(caches);
+    }
+
+    @Override
+    public Option load(Field field) throws Exception {
+        Load load = new Load(ImmutableList.of(field), this.patterns);
+        this.loads.add(load);
+        try {
+            Option value;
+            int attempts = 0;
+            do {
+                load.changed = false;
+                value = this.loader.load(field);
+            } while (load.changed && ++attempts < MAX_ATTEMPTS);
+            return value;
+        } finally {
+            this.loads.remove(load);
+        }
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        Load load = new Load(fields, this.patterns);
+        this.loads.add(load);
+        try {
+            Map<Field, Option> values;
+            int attempts = 0;
+            do {
+                load.changed = false;
+                values = this.loader.loadAll(fields);
+            } while (load.changed && ++attempts < MAX_ATTEMPTS);
+            return values;
+        } finally {
+            this.loads.remove(load);
+        }
+    }
+
+    @Override
+    public void changed(String key) {
+        for (Load load : this.loads) {
+            if (load.matches(key)) {
+                load.changed = true;
+            }
+        }
+        for (Map.Entry<Field, KeyPattern> entry : this.patterns.entries()) {
+            if (entry.getValue().matches(key)) {
+                for (Cache<Field, ?> cache : this.caches) {
+                    cache.invalidate(entry.getKey());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (Load load : this.loads) {
+            load.changed = true;
+        }
+        for (Cache<Field, ?> cache : this.caches) {
+            cache.invalidateAll();
+        }
+    }
+}
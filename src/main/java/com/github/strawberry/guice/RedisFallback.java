@@ -0,0 +1,243 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.data.Option;
+
+/**
+ * Wraps the actual {@link CacheLoader} to keep injection going while Redis is
+ * unavailable. Depending on how it is configured, it:
+ * 
+ * <ul>
+ * <li>keeps the last value that was loaded for every field, and serves it
+ * when loading the field fails (up to a maximum staleness).</li>
+ * <li>gives up on a load that takes longer than a deadline, which then counts
+ * as a failure. The load itself carries on in the background, so that its
+ * value can still be kept once it arrives. At most {@value #LOADERS} loads run
+ * in the background (with {@value #QUEUED} more waiting), a load beyond that
+ * is refused and also counts as a failure, so that a hanging Redis can not
+ * pile up threads.</li>
+ * <li>stops contacting Redis for a while after a number of consecutive
+ * failures (a circuit breaker), after which a single load is let through to
+ * find out whether Redis is available again.</li>
+ * </ul>
+ * 
+ * Only connection failures ({@link JedisConnectionException}) and missed
+ * deadlines count as failures. Other errors, such as values that cannot be
+ * converted, are passed on as they are, but show that Redis is available.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisFallback extends CacheLoader<Field, Option> {
+
+    private static final Logger LOGGER = Logger.getLogger(RedisFallback.class.getName());
+
+    static final int LOADERS = 8;
+    static final int QUEUED = 16;
+
+    private final CacheLoader<Field, Option> loader;
+    private final Cache<Field, Option> lastValues;
+    private final long timeoutNanos;
+    private final ExecutorService executor;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile long openedAt;
+
+    /**
+     * @param loader The loader to wrap.
+     * @param maxStaleness The maximum time (in nanoseconds) since a value was
+     * loaded for it to be served when loading fails, or 0 to not keep values.
+     * @param timeoutNanos The deadline for a load, or 0 for no deadline.
+     * @param failureThreshold The number of consecutive failures after which
+     * Redis is no longer contacted, or 0 for no circuit breaker.
+     * @param openNanos The time that Redis is not contacted after the
+     * failure threshold has been reached.
+     */
+    RedisFallback(CacheLoader<Field, Option> loader, long maxStaleness, long timeoutNanos, int failureThreshold, long openNanos) {
+        this.loader = loader;
+        this.lastValues = maxStaleness > 0 ?
+            CacheBuilder.newBuilder().expireAfterWrite(maxStaleness, TimeUnit.NANOSECONDS).<Field, Option>build() :
+            null;
+        this.timeoutNanos = timeoutNanos;
+        this.executor = timeoutNanos > 0 ? newExecutor() : null;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+    }
+
+    private static ExecutorService newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            LOADERS, LOADERS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUED),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-loader-%d").build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public Option load(final Field field) throws Exception {
+        try {
+            return call(new Callable<Option>() {
+
+                @Override
+                public Option call() throws Exception {
+                    Option value = loader.load(field);
+                    if (lastValues != null) {
+                        lastValues.put(field, value);
+                    }
+                    return value;
+                }
+            });
+        } catch (JedisConnectionException e) {
+            Option value = this.lastValues != null ? this.lastValues.getIfPresent(field) : null;
+            if (value == null) {
+                throw e;
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(final Iterable<? extends Field> fields) throws Exception {
+        try {
+            return call(new Callable<Map<Field, Option>>() {
+
+                @Override
+                public Map<Field, Option> call() throws Exception {
+                    Map<Field, Option> values = loader.loadAll(fields);
+                    if (lastValues != null) {
+                        lastValues.putAll(values);
+                    }
+                    return values;
+                }
+            });
+        } catch (JedisConnectionException e) {
+            if (this.lastValues == null) {
+                throw e;
+            }
+            Map<Field, Option> values = Maps.newLinkedHashMap();
+            for (Field field : fields) {
+                Option value = this.lastValues.getIfPresent(field);
+                if (value == null) {
+                    throw e;
+                }
+                values.put(field, value);
+            }
+            return values;
+        }
+    }
+
+    private <V> V call(Callable<V> callable) throws Exception {
+        if (!isCallPermitted()) {
+            throw new JedisConnectionException("Redis is not contacted after repeated failures.");
+        }
+        V result;
+        boolean connected = true;
+        try {
+            if (this.executor == null) {
+                result = callable.call();
+            } else {
+                Future<V> future;
+                try {
+                    future = this.executor.submit(callable);
+                } catch (RejectedExecutionException e) {
+                    throw new JedisConnectionException(String.format(
+                        "Loading from Redis was refused, %d loads are still running.", LOADERS + QUEUED), e);
+                }
+                try {
+                    result = future.get(this.timeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    throw new JedisConnectionException(String.format(
+                        "Loading from Redis took longer than %d ms.", TimeUnit.NANOSECONDS.toMillis(this.timeoutNanos)), e);
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+        } catch (JedisConnectionException e) {
+            connected = false;
+            failed();
+            throw e;
+        } finally {
+            // Any other outcome (including other errors, such as values that
+            // cannot be converted) shows that Redis could be contacted, and
+            // also ends a probe, so that the breaker can not stay open.
+            if (connected) {
+                succeeded();
+            }
+        }
+        return result;
+    }
+
+    private boolean isCallPermitted() {
+        if (this.failureThreshold <= 0 || this.failures.get() < this.failureThreshold) {
+            return true;
+        }
+        // Once the breaker has been open long enough, let a single call through
+        // to find out whether Redis is available again.
+        return System.nanoTime() - this.openedAt >= this.openNanos && this.probing.compareAndSet(false, true);
+    }
+
+    private void succeeded() {
+        this.failures.set(0);
+        this.probing.set(false);
+    }
+
+    private void failed() {
+        if (this.failures.incrementAndGet() >= this.failureThreshold && this.failureThreshold > 0) {
+            if (!this.probing.get() && this.failures.get() == this.failureThreshold) {
+                LOGGER.warning(String.format(
+                    "Redis is not contacted for %d ms after %d consecutive failures.",
+                    TimeUnit.NANOSECONDS.toMillis(this.openNanos), this.failureThreshold));
+            }
+            this.openedAt = System.nanoTime();
+            this.probing.set(false);
+        }
+    }
+
+    void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.strawberry.redis.KeyspaceNotifier;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps track of the {@link RedisMembersInjector}s (and through them, of the
+ * instances that they injected), so that the fields of already constructed
+ * instances can be injected again when the keys that they depend on are
+ * changed in Redis. Re-injection happens on a background thread, off the
+ * path of the code that requested the instances.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisInstanceRegistry implements KeyspaceNotifier.Listener {
+
+    private static final Logger LOGGER = Logger.getLogger(RedisInstanceRegistry.class.getName());
+
+    private final List<RedisMembersInjector<?>> injectors = new CopyOnWriteArrayList<RedisMembersInjector<?>>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-reinjector").build());
+
+    void register(RedisMembersInjector<?> injector) {
+        this.injectors.add(injector);
+    }
+
+    @Override
+    public void changed(final String key) {
+        this.executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                for (RedisMembersInjector<?> injector : injectors) {
+                    try {
+                        injector.reinject(key);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, String.format("Could not inject changed key: (%s).", key), e);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void reset() {
+        this.executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                for (RedisMembersInjector<?> injector : injectors) {
+                    try {
+                        injector.reinject();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Could not inject instances again.", e);
+                    }
+                }
+            }
+        });
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -18,42 +18,129 @@
 package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+import com.github.strawberry.redis.KeyPattern;
+import com.github.strawberry.redis.KeyPatterns;
+import com.github.strawberry.util.FieldMetrics;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.MembersInjector;
 
 import fj.data.Option;
 
 /**
+ * Injects all the {@link Redis}-annotated fields of a class at once. Values
+ * of fields that are not cached yet are loaded together (see
+ * {@link LoadingCache#getAll(Iterable)}), so that an object only needs a
+ * single connection and a couple of pipelined round trips to Redis,
+ * regardless of the number of annotated fields.
+ * 
+ * <p>
+ * If instances are tracked, the injector keeps weak references to the
+ * instances that it injected, so that their fields can be injected again (see
+ * {@link RedisInstanceRegistry}) without preventing them from being garbage
+ * collected.
+ * </p>
  *
  * @author Wiehann Matthysen
  */
 final class RedisMembersInjector<T> implements MembersInjector<T> {
 
     private final LoadingCache<Field, Option> cache;
-    private final Field field;
+    private final List<Field> fields;
+    private final List<KeyPattern> patterns;
+    private final Set<T> instances;
+    private final FieldMetrics metrics;
 
-    RedisMembersInjector(LoadingCache<Field, Option> cache, Field field) {
+    RedisMembersInjector(LoadingCache<Field, Option> cache, List<Field> fields, KeyPatterns patterns, boolean tracking,
+            FieldMetrics metrics) {
         this.cache = cache;
-        this.field = field;
-        this.field.setAccessible(true);
+        this.metrics = metrics;
+        this.fields = ImmutableList.copyOf(fields);
+        ImmutableList.Builder<KeyPattern> builder = ImmutableList.builder();
+        for (Field field : this.fields) {
+            field.setAccessible(true);
+            builder.add(patterns.of(field));
+        }
+        this.patterns = builder.build();
+        this.instances = tracking ? Collections.newSetFromMap(new MapMaker().weakKeys().<T, Boolean>makeMap()) : null;
     }
 
     @Override
     public void injectMembers(final T object) {
-        Option value = this.cache.getUnchecked(this.field);
+        inject(object, this.fields);
+        if (this.instances != null) {
+            this.instances.add(object);
+        }
+    }
+
+    /**
+     * Injects the fields whose key-pattern matches the given key again into
+     * all of the tracked instances.
+     */
+    void reinject(String key) {
+        List<Field> affected = Lists.newArrayList();
+        for (int i = 0; i < this.fields.size(); ++i) {
+            if (this.patterns.get(i).matches(key)) {
+                affected.add(this.fields.get(i));
+            }
+        }
+        if (!affected.isEmpty() && this.instances != null) {
+            for (T object : ImmutableList.copyOf(this.instances)) {
+                inject(object, affected);
+            }
+        }
+    }
+
+    /**
+     * Injects all fields again into all of the tracked instances.
+     */
+    void reinject() {
+        if (this.instances != null) {
+            for (T object : ImmutableList.copyOf(this.instances)) {
+                inject(object, this.fields);
+            }
+        }
+    }
+
+    private void inject(T object, List<Field> fields) {
+        if (this.metrics != null) {
+            for (Field field : fields) {
+                this.metrics.statsOf(field).requested();
+            }
+        }
+        Map<Field, Option> values;
+        try {
+            values = this.cache.getAll(fields);
+        } catch (ExecutionException e) {
+            throw new UncheckedExecutionException(e.getCause());
+        }
+        for (Field field : fields) {
+            inject(object, field, values.get(field));
+        }
+    }
+
+    private static void inject(Object object, Field field, Option value) {
         try {
-            Redis annotation = this.field.getAnnotation(Redis.class);
-            if (this.field.get(object) != null) {
+            Redis annotation = field.getAnnotation(Redis.class);
+            if (field.get(object) != null) {
                 // If field is not equal to null (i.e. default value has been set)
                 // and if value to be injected is not null, then set.
                 // Or, if forced update has been specified, then set.
                 if (annotation.forceUpdate() || value.isSome()) {
-                    this.field.set(object, value.toNull());
+                    field.set(object, value.toNull());
                 }
             } else {
                 // Always set null field.
-                this.field.set(object, value.toNull());
+                field.set(object, value.toNull());
             }
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
@@ -17,17 +17,30 @@
  */
 package com.github.strawberry.guice;
 
+import java.io.File;
 import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import com.github.strawberry.redis.KeyPatterns;
+import com.github.strawberry.redis.KeyspaceNotifier;
 import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.VersionPoller;
+import com.github.strawberry.util.FieldMetrics;
+import com.github.strawberry.util.FieldStats;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
 import com.google.inject.matcher.Matchers;
 
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ShardedJedisPool;
 
 import fj.data.Option;
 
@@ -87,11 +100,487 @@ import fj.data.Option;
  * the bulk of the logic that pertains to loading and transforming values from
  * Redis to be used as field-values.
  * 
+ * <p>
+ * Lastly, a {@link Builder} (see {@link RedisModule#builder(JedisPool)}) is
+ * available to set up a {@code RedisModule} with caching policies that need
+ * more than just a {@code LoadingCache}. For example, the following will cache
+ * field values indefinitely, while making use of Redis' keyspace notifications
+ * to invalidate them as soon as they are changed in the Redis database:
+ * </p>
+ * 
+ * <pre>
+ * install(RedisModule.builder(this.pool).invalidateOnChange().build());
+ * </pre>
+ * 
  * @author Wiehann Matthysen
  */
 public final class RedisModule extends AbstractModule {
 
+    /**
+     * Builder of {@link RedisModule}s with more advanced caching policies.
+     */
+    public static final class Builder {
+
+        private final JedisPool pool;
+        private boolean invalidateOnChange = false;
+        private boolean reinjectOnChange = false;
+        private long refreshInterval = 0;
+        private TimeUnit refreshUnit = null;
+        private Executor refreshExecutor = null;
+        private long absentDuration = 0;
+        private TimeUnit absentUnit = null;
+        private FieldMetrics metrics = null;
+        private long maxStaleness = 0;
+        private long loadTimeout = 0;
+        private int failureThreshold = 0;
+        private long openDuration = 0;
+        private File snapshot = null;
+        private JedisPool[] replicas = null;
+        private double hedgeQuantile = 0;
+        private int chunkSize = 0;
+        private long batchWindow = 0;
+        private TimeUnit batchUnit = null;
+        private int batchMaxKeys = 0;
+        private boolean sharePayloads = false;
+        private boolean consistentReads = false;
+        private String versionKey = null;
+        private long versionInterval = 0;
+        private TimeUnit versionUnit = null;
+
+        private Builder(JedisPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Caches field values indefinitely, and subscribes to the keyspace
+         * notifications of the Redis database (see {@link KeyspaceNotifier})
+         * to invalidate exactly those cached values whose key-pattern matches
+         * a key that was changed. Redis should be configured to publish these
+         * notifications (for example with {@code notify-keyspace-events KA}).
+         * @return This builder.
+         */
+        public Builder invalidateOnChange() {
+            this.invalidateOnChange = true;
+            return this;
+        }
+
+        /**
+         * Caches field values until the value of the given version key (for
+         * example {@code config:__version}) changes, which is read from Redis
+         * at the given interval (see {@link VersionPoller}). All cached values
+         * are then invalidated (and instances are injected again if
+         * {@link Builder#reinjectOnChange()} is used). Whoever changes the
+         * keys that fields are injected with should change the version key as
+         * well (for example with {@code INCR}). This costs a single
+         * {@code GET} per interval, and does not require Redis to publish
+         * keyspace notifications.
+         * @param key The version key.
+         * @param interval The time between two reads of the version key.
+         * @param unit The unit of {@code interval}.
+         * @return This builder.
+         */
+        public Builder pollVersion(String key, long interval, TimeUnit unit) {
+            this.versionKey = key;
+            this.versionInterval = interval;
+            this.versionUnit = unit;
+            return this;
+        }
+
+        /**
+         * Caches field values, and reloads them on the given {@link Executor}
+         * once the given duration has passed since they were loaded. While a
+         * value is being reloaded, the cache keeps serving the current value,
+         * so that injection does not have to wait for Redis once the cache is
+         * warm. Note that a value is only reloaded once it is requested after
+         * the duration has passed (see {@link CacheBuilder#refreshAfterWrite}).
+         * @param duration The time after which a value should be reloaded.
+         * @param unit The unit of the duration.
+         * @param executor The executor on which values are reloaded.
+         * @return This builder.
+         */
+        public Builder refreshAfterWrite(long duration, TimeUnit unit, Executor executor) {
+            this.refreshInterval = duration;
+            this.refreshUnit = unit;
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Keeps (weak) references to all instances that were injected, and
+         * injects their fields again on a background thread whenever the keys
+         * that these fields depend on are changed in the Redis database. This
+         * allows long-lived instances (such as singletons) to pick up changed
+         * values without having to be constructed again. As with
+         * {@link Builder#invalidateOnChange()}, Redis should be configured to
+         * publish keyspace notifications. Fields that are injected again
+         * should be declared {@code volatile} to make sure that other threads
+         * see the changed values.
+         * @return This builder.
+         */
+        public Builder reinjectOnChange() {
+            this.reinjectOnChange = true;
+            return this;
+        }
+
+        /**
+         * Keeps the values of fields whose key-pattern matches no keys for the
+         * given duration, so that injecting such fields again does not
+         * contact Redis (see {@link RedisLoader.Builder#cacheAbsent}). When
+         * combined with a caching policy, these values expire after the given
+         * duration instead of being cached as long as the values that are
+         * present. They are still invalidated when a matching key is created
+         * if {@link Builder#invalidateOnChange()} is used.
+         * @param duration The length of time that absent values are kept.
+         * @param unit The unit of the duration.
+         * @return This builder.
+         */
+        public Builder cacheAbsent(long duration, TimeUnit unit) {
+            this.absentDuration = duration;
+            this.absentUnit = unit;
+            return this;
+        }
+
+        /**
+         * Keeps the last value that was loaded for every field, and injects
+         * it when loading the field from Redis fails (for example because
+         * Redis cannot be reached, or see
+         * {@link Builder#loadTimeout(long, TimeUnit)}), as long as the value
+         * was loaded less than the given duration ago. Without a caching
+         * policy this makes injection keep working while Redis is unavailable,
+         * albeit with values that may be out of date.
+         * @param maxStaleness The maximum age of a value that is injected when
+         * loading fails.
+         * @param unit The unit of {@code maxStaleness}.
+         * @return This builder.
+         */
+        public Builder serveStaleOnError(long maxStaleness, TimeUnit unit) {
+            this.maxStaleness = unit.toNanos(maxStaleness);
+            return this;
+        }
+
+        /**
+         * Gives up on loading field values from Redis once the given deadline
+         * has passed, which counts as a failed load (see
+         * {@link Builder#serveStaleOnError(long, TimeUnit)} and
+         * {@link Builder#circuitBreaker(int, long, TimeUnit)}). Loads are then
+         * performed on a separate thread, which is stopped by
+         * {@link RedisModule#close()}.
+         * @param timeout The deadline for loading values.
+         * @param unit The unit of {@code timeout}.
+         * @return This builder.
+         */
+        public Builder loadTimeout(long timeout, TimeUnit unit) {
+            this.loadTimeout = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Stops contacting Redis for the given duration once the given number
+         * of consecutive loads have failed, so that an unavailable Redis is
+         * not contacted for every injection. Loads fail immediately while
+         * Redis is not contacted (or are served stale values, see
+         * {@link Builder#serveStaleOnError(long, TimeUnit)}). Once the
+         * duration has passed, a single load is let through to find out
+         * whether Redis is available again.
+         * @param failures The number of consecutive failures after which
+         * Redis is no longer contacted.
+         * @param duration The length of time that Redis is not contacted.
+         * @param unit The unit of {@code duration}.
+         * @return This builder.
+         */
+        public Builder circuitBreaker(int failures, long duration, TimeUnit unit) {
+            this.failureThreshold = failures;
+            this.openDuration = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Injects fields that are loaded for the first time from the given
+         * snapshot file (see {@link RedisLoader.Builder#snapshot(File)})
+         * instead of from Redis, so that processes that start up together do
+         * not all load every field from Redis at once. With a caching policy,
+         * the values served from the snapshot are loaded again from Redis in
+         * the background. The snapshot file is written (with the values
+         * that were loaded from Redis) by {@link RedisModule#close()}.
+         * @param file The snapshot file.
+         * @return This builder.
+         */
+        public Builder snapshot(File file) {
+            this.snapshot = file;
+            return this;
+        }
+
+        /**
+         * Loads field values from the given replicas of the Redis database,
+         * preferring the replica with the lowest recent latency, instead of
+         * from the pool that this builder was created with (see
+         * {@link RedisLoader.Builder#replicas(JedisPool...)}). That pool is
+         * then only read from if none of the replicas can be read from.
+         * Replicas can not be combined with
+         * {@link Builder#invalidateOnChange()},
+         * {@link Builder#reinjectOnChange()} or
+         * {@link Builder#pollVersion(String, long, TimeUnit)}: these learn about
+         * changes from the primary, and a replica that has not caught up yet
+         * would serve the old value again, which would then be kept until the
+         * next change.
+         * @param replicas The pools of connections to the replicas.
+         * @return This builder.
+         */
+        public Builder replicas(JedisPool... replicas) {
+            this.replicas = replicas;
+            return this;
+        }
+
+        /**
+         * Sends a load that takes longer than the given percentile of the
+         * latencies of its replica to the next replica as well, and uses the
+         * first answer (see {@link RedisLoader.Builder#hedgeAfter(double)}).
+         * Only has an effect together with
+         * {@link Builder#replicas(JedisPool...)}.
+         * @param quantile The percentile (between 0 and 1, for example 0.95)
+         * after which a load is hedged.
+         * @return This builder.
+         */
+        public Builder hedgeAfter(double quantile) {
+            this.hedgeQuantile = quantile;
+            return this;
+        }
+
+        /**
+         * Reads lists, hashes, sets and sorted sets in chunks of the given
+         * number of elements (see {@link RedisLoader.Builder#chunkSize(int)}),
+         * so that very large structures do not block Redis.
+         * @param chunkSize The number of elements to read per command.
+         * @return This builder.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Reads the literal keys of fields that are loaded by different
+         * threads at about the same time with a single {@code MGET} (see
+         * {@link RedisLoader.Builder#batchGets(long, TimeUnit, int)}).
+         * @param window The time that a load waits for other loads.
+         * @param unit The unit of {@code window}.
+         * @param maxKeys The number of keys after which the values are read
+         * without waiting any longer.
+         * @return This builder.
+         */
+        public Builder batchGets(long window, TimeUnit unit, int maxKeys) {
+            this.batchWindow = window;
+            this.batchUnit = unit;
+            this.batchMaxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Reads all the fields of an object that are loaded together at a
+         * single point in time (see
+         * {@link RedisLoader.Builder#consistentReads()}), so that keys that
+         * are changed together (for example in a {@code MULTI}/{@code EXEC}
+         * transaction) are never injected half-changed. Without a caching
+         * policy, all fields of an object are loaded together every time that
+         * it is injected. Concurrent loads of the same field are then no
+         * longer shared, as another load may read the field at a different
+         * point in time. With a caching policy, only the fields that are not
+         * cached are loaded together.
+         * @return This builder.
+         */
+        public Builder consistentReads() {
+            this.consistentReads = true;
+            return this;
+        }
+
+        /**
+         * Lets fields with the same key-pattern share the values that are
+         * loaded from Redis (see {@link RedisLoader.Builder#sharePayloads()}),
+         * so that these are read and converted only once. Fields with the
+         * same key-pattern and type are then injected with the same instance,
+         * which should not be modified. Only has an effect together with a
+         * caching policy: the shared values are discarded when their keys are
+         * changed (see {@link Builder#invalidateOnChange()}), when the version
+         * changes (see {@link Builder#pollVersion(String, long, TimeUnit)}),
+         * or once the
+         * refresh interval has passed (see
+         * {@link Builder#refreshAfterWrite(long, TimeUnit, Executor)}), so
+         * that a reload never sees values that are older than the cached ones.
+         * @return This builder.
+         */
+        public Builder sharePayloads() {
+            this.sharePayloads = true;
+            return this;
+        }
+
+        /**
+         * Records the statistics of every annotated field (see
+         * {@link FieldStats}) in the given registry: the number of times that
+         * its value is requested and loaded, and the time spent loading it.
+         * @param metrics The registry of field statistics.
+         * @return This builder.
+         */
+        public Builder recordStats(FieldMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds the {@code RedisModule}, starting any background activity
+         * (see {@link RedisModule#close()}) that its caching policy needs.
+         * @return The newly created {@code RedisModule}.
+         * @throws IllegalStateException if replicas are combined with
+         * invalidation or reinjection on change (see
+         * {@link Builder#replicas(JedisPool...)}).
+         */
+        public RedisModule build() {
+            boolean onChange = this.invalidateOnChange || this.reinjectOnChange || this.versionKey != null;
+            if (this.replicas != null && onChange) {
+                throw new IllegalStateException(
+                    "Replicas can not be used together with invalidation or reinjection on change.");
+            }
+            RedisLoader.Builder loaderBuilder = RedisLoader.builder(this.pool).chunkSize(this.chunkSize);
+            if (this.absentDuration > 0) {
+                loaderBuilder.cacheAbsent(this.absentDuration, this.absentUnit);
+            }
+            if (this.metrics != null) {
+                loaderBuilder.recordStats(this.metrics);
+            }
+            if (this.snapshot != null) {
+                loaderBuilder.snapshot(this.snapshot);
+            }
+            if (this.replicas != null) {
+                loaderBuilder.replicas(this.replicas).hedgeAfter(this.hedgeQuantile);
+            }
+            if (this.batchWindow > 0) {
+                loaderBuilder.batchGets(this.batchWindow, this.batchUnit, this.batchMaxKeys);
+            }
+            if (this.consistentReads) {
+                loaderBuilder.consistentReads();
+            }
+            boolean sharing = this.sharePayloads &&
+                (this.invalidateOnChange || this.versionKey != null || this.refreshExecutor != null);
+            if (sharing && this.refreshExecutor != null) {
+                loaderBuilder.sharePayloads(this.refreshInterval, this.refreshUnit);
+            } else if (sharing) {
+                loaderBuilder.sharePayloads();
+            }
+            final RedisLoader redisLoader = loaderBuilder.build();
+            CacheLoader<Field, Option> loader = redisLoader;
+            RedisFallback fallback = null;
+            if (this.maxStaleness > 0 || this.loadTimeout > 0 || this.failureThreshold > 0) {
+                fallback = new RedisFallback(loader, this.maxStaleness, this.loadTimeout,
+                    this.failureThreshold, this.openDuration);
+                loader = fallback;
+            }
+            KeyspaceNotifier notifier = null;
+            if (this.invalidateOnChange || this.reinjectOnChange) {
+                notifier = new KeyspaceNotifier(this.pool);
+            }
+            VersionPoller poller = null;
+            if (this.versionKey != null) {
+                poller = new VersionPoller(this.pool, this.versionKey, this.versionInterval, this.versionUnit);
+            }
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+            boolean caching = false;
+            KeyPatterns patterns = new KeyPatterns();
+            RedisCacheInvalidator invalidator = null;
+            if (this.invalidateOnChange || poller != null) {
+                invalidator = new RedisCacheInvalidator(loader, patterns);
+                loader = invalidator;
+                caching = true;
+            }
+            if (this.refreshExecutor != null) {
+                builder.refreshAfterWrite(this.refreshInterval, this.refreshUnit);
+                loader = new RedisRefresher(loader, this.refreshExecutor);
+                caching = true;
+            }
+            RedisSnapshotRevalidator revalidator = null;
+            if (this.snapshot != null) {
+                revalidator = new RedisSnapshotRevalidator(loader, redisLoader);
+                if (caching) {
+                    // Without a caching policy, fields are loaded from Redis
+                    // again the next time that they are injected anyway.
+                    loader = revalidator;
+                }
+            }
+            if (!caching) {
+                // Without a caching policy, values are never stored (see
+                // RedisModule(JedisPool)).
+                builder.maximumSize(0);
+                if (!this.consistentReads) {
+                    loader = new RedisSingleFlight(loader);
+                }
+            }
+            LoadingCache<Field, Option> cache = builder.build(loader);
+            if (revalidator != null && caching) {
+                cache = revalidator.revalidates(cache);
+            }
+            if (sharing && (notifier != null || poller != null)) {
+                // The shared values should be discarded before the cache is
+                // invalidated, so that changed values are loaded from Redis.
+                addListener(notifier, poller, new KeyspaceNotifier.Listener() {
+
+                    @Override
+                    public void changed(String key) {
+                        redisLoader.invalidatePayloads(key);
+                    }
+
+                    @Override
+                    public void reset() {
+                        redisLoader.invalidatePayloads();
+                    }
+                });
+            }
+            if (invalidator != null) {
+                List<Cache<Field, ?>> caches = Lists.newArrayList();
+                caches.add(cache);
+                if (redisLoader.absentCache() != null) {
+                    caches.add(redisLoader.absentCache());
+                }
+                invalidator.invalidates(caches);
+                addListener(notifier, poller, invalidator);
+            }
+            if (caching && redisLoader.absentCache() != null) {
+                cache = new RedisAbsentCache(cache, redisLoader);
+            }
+            // The registry should be notified after the cache has been
+            // invalidated, so that changed values are loaded.
+            RedisInstanceRegistry registry = null;
+            if (this.reinjectOnChange) {
+                registry = new RedisInstanceRegistry();
+                addListener(notifier, poller, registry);
+            }
+            if (notifier != null) {
+                notifier.start();
+            }
+            if (poller != null) {
+                poller.start();
+            }
+            return new RedisModule(cache, patterns, notifier, poller, registry, fallback, revalidator)
+                .recordStats(this.metrics);
+        }
+
+        private static void addListener(KeyspaceNotifier notifier, VersionPoller poller,
+                KeyspaceNotifier.Listener listener) {
+            if (notifier != null) {
+                notifier.addListener(listener);
+            }
+            if (poller != null) {
+                poller.addListener(listener);
+            }
+        }
+    }
+
     private final LoadingCache<Field, Option> cache;
+    private final KeyPatterns patterns;
+    private final KeyspaceNotifier notifier;
+    private final VersionPoller poller;
+    private final RedisInstanceRegistry registry;
+    private final RedisFallback fallback;
+    private final RedisSnapshotRevalidator revalidator;
+    private CacheWarmer warmer;
+    private FieldMetrics metrics;
 
     /**
      * Initializes a newly created {@code RedisModule} with the given cache of
@@ -100,7 +589,19 @@ public final class RedisModule extends AbstractModule {
      * are loaded from the Redis database.
      */
     public RedisModule(LoadingCache<Field, Option> cache) {
+        this(cache, new KeyPatterns(), null, null, null, null, null);
+    }
+
+    private RedisModule(LoadingCache<Field, Option> cache, KeyPatterns patterns, KeyspaceNotifier notifier,
+            VersionPoller poller, RedisInstanceRegistry registry, RedisFallback fallback,
+            RedisSnapshotRevalidator revalidator) {
         this.cache = cache;
+        this.patterns = patterns;
+        this.notifier = notifier;
+        this.poller = poller;
+        this.registry = registry;
+        this.fallback = fallback;
+        this.revalidator = revalidator;
     }
 
     /**
@@ -116,12 +617,116 @@ public final class RedisModule extends AbstractModule {
         // an object with Redis-annotated fields.
         
         // It achieves this by creating a cache that never stores it's values
-        // (maximum size of 0).
-        this.cache = CacheBuilder.newBuilder().maximumSize(0).build(new RedisLoader(pool));
+        // (maximum size of 0). Concurrent loads of the same field still share
+        // a single read from Redis.
+        this(CacheBuilder.newBuilder().maximumSize(0).recordStats().build(
+            new RedisSingleFlight(new RedisLoader(pool))));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisModule} with the given
+     * {@link ShardedJedisPool}. As with {@link #RedisModule(JedisPool)},
+     * field values are not cached, but loaded from the shards whenever the
+     * {@link com.google.inject.Injector} creates an object. A literal key is
+     * read from the shard that owns it, while the keys that match a
+     * key-pattern are discovered on all shards in parallel.
+     * @param pool The pool of sharded connections.
+     */
+    public RedisModule(ShardedJedisPool pool) {
+        this(CacheBuilder.newBuilder().maximumSize(0).recordStats().build(
+            new RedisSingleFlight(new RedisLoader(pool))));
+    }
+
+    /**
+     * Returns a {@link Builder} of {@code RedisModule}s that will load field
+     * values from the Redis database that the given pool connects to.
+     * @param pool The pool of connections to a Redis database.
+     * @return The builder.
+     */
+    public static Builder builder(JedisPool pool) {
+        return new Builder(pool);
+    }
+
+    /**
+     * Loads the values of all the {@link Redis}-annotated fields of the types
+     * that the {@link com.google.inject.Injector} encounters while it is
+     * being created, so that the first instances of these types do not have
+     * to wait for Redis. The fields are loaded into the cache in batches of
+     * the given size, on the given number of threads, before the
+     * {@code Injector} is returned. Warming up is only useful if the cache
+     * actually stores values (i.e. not with {@link #RedisModule(JedisPool)}).
+     * Consider creating the {@code Injector} in
+     * {@link com.google.inject.Stage#PRODUCTION}, in which singletons are
+     * then created with the warmed-up values.
+     * @param batchSize The maximum number of fields to load per batch.
+     * @param parallelism The maximum number of batches to load at once.
+     * @return This module.
+     */
+    public RedisModule warmUp(int batchSize, int parallelism) {
+        this.warmer = new CacheWarmer(this.cache, batchSize, parallelism);
+        return this;
+    }
+
+    /**
+     * @return The report of the warm-up (see {@link #warmUp(int, int)}), or
+     * {@code null} if the cache has not been warmed up (yet).
+     */
+    public WarmUpReport warmUpReport() {
+        return this.warmer != null ? this.warmer.report() : null;
+    }
+
+    /**
+     * Counts the number of times that the value of every annotated field is
+     * requested for injection in the given registry (see
+     * {@link FieldStats#getRequests()}). Together with the loads that the
+     * {@link RedisLoader} (see {@link RedisLoader.Builder#recordStats})
+     * records in the same registry, this gives the hit rate of every field.
+     * @param metrics The registry of field statistics.
+     * @return This module.
+     */
+    public RedisModule recordStats(FieldMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return The statistics of the cache of field values. These are only
+     * recorded if the cache was built with {@link CacheBuilder#recordStats()}.
+     */
+    public CacheStats cacheStats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Stops any background activity (such as listening for keyspace
+     * notifications or polling the version key) that was started for this
+     * {@code RedisModule}, and writes the snapshot file if one was configured
+     * (see {@link Builder#snapshot(File)}).
+     */
+    public void close() {
+        if (this.notifier != null) {
+            this.notifier.stop();
+        }
+        if (this.poller != null) {
+            this.poller.stop();
+        }
+        if (this.registry != null) {
+            this.registry.shutdown();
+        }
+        if (this.fallback != null) {
+            this.fallback.shutdown();
+        }
+        if (this.revalidator != null) {
+            this.revalidator.shutdown();
+        }
     }
 
     @Override
     protected void configure() {
-        bindListener(Matchers.any(), new RedisTypeListener(this.cache));
+        bindListener(Matchers.any(), new RedisTypeListener(
+            this.cache, this.registry, this.warmer, this.metrics, this.patterns));
+        if (this.warmer != null) {
+            requestInjection(this.warmer);
+        }
     }
 }
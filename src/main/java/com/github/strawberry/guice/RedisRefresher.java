@@ -0,0 +1,72 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import fj.data.Option;
+
+/**
+ * Wraps the actual {@link CacheLoader} so that refreshing a cached value (see
+ * {@link com.google.common.cache.CacheBuilder#refreshAfterWrite}) happens on
+ * the given {@link Executor}. While the value is being reloaded, the cache
+ * keeps serving the old value, so that injection never has to wait for Redis
+ * once the cache is warm.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisRefresher extends CacheLoader<Field, Option> {
+
+    private final CacheLoader<Field, Option> loader;
+    private final Executor executor;
+
+    RedisRefresher(CacheLoader<Field, Option> loader, Executor executor) {
+        this.loader = loader;
+        this.executor = executor;
+    }
+
+    @Override
+    public Option load(Field field) throws Exception {
+        return this.loader.load(field);
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        return this.loader.loadAll(fields);
+    }
+
+    @Override
+    public ListenableFuture<Option> reload(final Field field, Option oldValue) {
+        ListenableFutureTask<Option> task = ListenableFutureTask.create(new Callable<Option>() {
+
+            @Override
+            public Option call() throws Exception {
+                return loader.load(field);
+            }
+        });
+        this.executor.execute(task);
+        return task;
+    }
+}
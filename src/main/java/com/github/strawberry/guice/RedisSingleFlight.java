@@ -0,0 +1,130 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import fj.data.Option;
+
+/**
+ * Wraps the actual {@link CacheLoader} so that concurrent loads of the same
+ * field share a single load from Redis (single-flight). A field that is
+ * requested while it is already being loaded by another thread is not loaded
+ * again, but receives the value of that load instead. Nothing is kept once a
+ * load completes, so every load that starts afterwards reads Redis again.
+ * This is meant for caches that do not store their values (see
+ * {@link RedisModule#RedisModule(redis.clients.jedis.JedisPool)}), for which
+ * the cache itself does not coalesce concurrent loads.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisSingleFlight extends CacheLoader<Field, Option> {
+
+    private final CacheLoader<Field, Option> loader;
+    private final ConcurrentMap<Field, Flight> flights = Maps.newConcurrentMap();
+
+    RedisSingleFlight(CacheLoader<Field, Option> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * A load of a number of fields that other threads can wait for.
+     */
+    private final class Flight implements Callable<Map<Field, Option>> {
+
+        private final FutureTask<Map<Field, Option>> task = new FutureTask<Map<Field, Option>>(this);
+        private List<Field> fields;
+
+        @Override
+        public Map<Field, Option> call() throws Exception {
+            if (this.fields.size() == 1) {
+                Field field = this.fields.get(0);
+                return ImmutableMap.of(field, loader.load(field));
+            }
+            return loader.loadAll(this.fields);
+        }
+
+        /**
+         * Loads the fields of this flight on the calling thread, after which
+         * they can be loaded again by later flights.
+         */
+        Map<Field, Option> run(List<Field> fields) throws Exception {
+            this.fields = fields;
+            try {
+                this.task.run();
+            } finally {
+                for (Field field : fields) {
+                    flights.remove(field, this);
+                }
+            }
+            return get();
+        }
+
+        Map<Field, Option> get() throws Exception {
+            try {
+                return this.task.get();
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public Option load(Field field) throws Exception {
+        return loadAll(ImmutableList.of(field)).get(field);
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        Flight flight = new Flight();
+        List<Field> owned = Lists.newArrayList();
+        Map<Field, Flight> joined = Maps.newLinkedHashMap();
+        for (Field field : fields) {
+            Flight current = this.flights.putIfAbsent(field, flight);
+            if (current == null) {
+                owned.add(field);
+            } else {
+                joined.put(field, current);
+            }
+        }
+        Map<Field, Option> values = Maps.newHashMap();
+        // The fields that this thread owns are loaded before waiting on the
+        // loads of other threads, so that no two threads wait on each other.
+        if (!owned.isEmpty()) {
+            values.putAll(flight.run(owned));
+        }
+        for (Map.Entry<Field, Flight> entry : joined.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get().get(entry.getKey()));
+        }
+        return values;
+    }
+}
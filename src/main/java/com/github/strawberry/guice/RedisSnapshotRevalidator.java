@@ -0,0 +1,182 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.ForwardingLoadingCache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fj.data.Option;
+
+/**
+ * Wraps the actual {@link CacheLoader} so that the cached values of fields
+ * that were served from a snapshot (see
+ * {@link RedisLoader.Builder#snapshot(java.io.File)}) are loaded again from
+ * Redis on a background thread. Injection can therefore start with the
+ * values from the snapshot, while these are brought up to date shortly
+ * after. A field is only loaded again once its value from the snapshot has
+ * been stored in the cache (see {@link #revalidates(LoadingCache)}), so that
+ * storing that value can not overwrite the value from Redis. The snapshot is
+ * written when the revalidator is shut down.
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisSnapshotRevalidator extends CacheLoader<Field, Option> {
+
+    private static final Logger LOGGER = Logger.getLogger(RedisSnapshotRevalidator.class.getName());
+
+    private final CacheLoader<Field, Option> loader;
+    private final RedisLoader redisLoader;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-revalidator").build());
+    private final Queue<Field> pending = new ConcurrentLinkedQueue<Field>();
+    private volatile LoadingCache<Field, Option> cache;
+
+    RedisSnapshotRevalidator(CacheLoader<Field, Option> loader, RedisLoader redisLoader) {
+        this.loader = loader;
+        this.redisLoader = redisLoader;
+    }
+
+    /**
+     * Sets the cache of which the entries should be revalidated. This cache is
+     * expected to use this revalidator as its loader.
+     * @return The cache through which values should be requested: the fields
+     * that were served from the snapshot while a request was being served are
+     * revalidated once it returns (at which point their values are cached).
+     */
+    LoadingCache<Field, Option> revalidates(LoadingCache<Field, Option> cache) {
+        this.cache = cache;
+        return new ForwardingLoadingCache.SimpleForwardingLoadingCache<Field, Option>(cache) {
+
+            @Override
+            public Option get(Field field) throws ExecutionException {
+                Option value = super.get(field);
+                revalidatePending();
+                return value;
+            }
+
+            @Override
+            public Option getUnchecked(Field field) {
+                Option value = super.getUnchecked(field);
+                revalidatePending();
+                return value;
+            }
+
+            @Override
+            public ImmutableMap<Field, Option> getAll(Iterable<? extends Field> fields) throws ExecutionException {
+                ImmutableMap<Field, Option> values = super.getAll(fields);
+                revalidatePending();
+                return values;
+            }
+        };
+    }
+
+    @Override
+    public Option load(Field field) throws Exception {
+        boolean snapshotted = this.redisLoader.hasSnapshotOf(field);
+        Option value = this.loader.load(field);
+        if (snapshotted) {
+            this.pending.add(field);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        List<Field> snapshotted = Lists.newArrayList();
+        for (Field field : fields) {
+            if (this.redisLoader.hasSnapshotOf(field)) {
+                snapshotted.add(field);
+            }
+        }
+        Map<Field, Option> values = this.loader.loadAll(fields);
+        this.pending.addAll(snapshotted);
+        return values;
+    }
+
+    @Override
+    public ListenableFuture<Option> reload(Field field, Option oldValue) throws Exception {
+        return this.loader.reload(field, oldValue);
+    }
+
+    private void revalidatePending() {
+        final List<Field> fields = Lists.newArrayList();
+        for (Field field = this.pending.poll(); field != null; field = this.pending.poll()) {
+            fields.add(field);
+        }
+        if (fields.isEmpty()) {
+            return;
+        }
+        this.executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                revalidate(fields);
+            }
+        });
+    }
+
+    /**
+     * Loads the given fields again, and replaces their cached values from the
+     * snapshot with the loaded values if these differ. Values that have been
+     * replaced or invalidated in the meantime are left alone.
+     */
+    private void revalidate(List<Field> fields) {
+        Map<Field, Option> values;
+        try {
+            values = this.loader.loadAll(fields);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not load fields that were served from the snapshot again.", e);
+            return;
+        }
+        for (Field field : fields) {
+            Option snapshotted = this.cache.getIfPresent(field);
+            Option value = values.get(field);
+            if (snapshotted != null && value != null && !Objects.equal(snapshotted.toNull(), value.toNull())) {
+                this.cache.asMap().replace(field, snapshotted, value);
+            }
+        }
+    }
+
+    void shutdown() {
+        this.executor.shutdownNow();
+        try {
+            this.redisLoader.saveSnapshot();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save snapshot.", e);
+        }
+    }
+}
@@ -18,8 +18,12 @@
 package com.github.strawberry.guice;
 
 import java.lang.reflect.Field;
+import java.util.List;
 
+import com.github.strawberry.redis.KeyPatterns;
+import com.github.strawberry.util.FieldMetrics;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.inject.TypeLiteral;
 import com.google.inject.spi.TypeEncounter;
 import com.google.inject.spi.TypeListener;
@@ -33,17 +37,43 @@ import fj.data.Option;
 final class RedisTypeListener implements TypeListener {
 
     private final LoadingCache<Field, Option> cache;
+    private final RedisInstanceRegistry registry;
+    private final CacheWarmer warmer;
+    private final FieldMetrics metrics;
+    private final KeyPatterns patterns;
 
-    RedisTypeListener(LoadingCache<Field, Option> cache) {
+    RedisTypeListener(LoadingCache<Field, Option> cache, RedisInstanceRegistry registry, CacheWarmer warmer,
+            FieldMetrics metrics, KeyPatterns patterns) {
         this.cache = cache;
+        this.registry = registry;
+        this.warmer = warmer;
+        this.metrics = metrics;
+        this.patterns = patterns;
     }
 
     @Override
     public <T> void hear(TypeLiteral<T> typeLiteral, TypeEncounter<T> typeEncounter) {
+        List<Field> fields = Lists.newArrayList();
         for (Field field : typeLiteral.getRawType().getDeclaredFields()) {
             if (field.isAnnotationPresent(Redis.class)) {
-                typeEncounter.register(new RedisMembersInjector<T>(this.cache, field));
+                // Parse the key-pattern up front, so that changed keys can be
+                // matched against it without parsing it again.
+                this.patterns.of(field);
+                fields.add(field);
+                if (this.warmer != null) {
+                    this.warmer.add(field);
+                }
             }
         }
+        // Register a single injector for all the annotated fields of the
+        // class, so that their values can be loaded together.
+        if (!fields.isEmpty()) {
+            RedisMembersInjector<T> injector = new RedisMembersInjector<T>(
+                this.cache, fields, this.patterns, this.registry != null, this.metrics);
+            if (this.registry != null) {
+                this.registry.register(injector);
+            }
+            typeEncounter.register(injector);
+        }
     }
 }
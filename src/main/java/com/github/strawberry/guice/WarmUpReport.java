@@ -0,0 +1,81 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code WarmUpReport} describes how the cache of a {@link RedisModule} or
+ * {@link ConfigModule} was warmed up while the
+ * {@link com.google.inject.Injector} was created (see
+ * {@link RedisModule#warmUp(int, int)} and
+ * {@link ConfigModule#warmUp(int, int)}).
+ *
+ * @author Wiehann Matthysen
+ */
+public final class WarmUpReport {
+
+    private final int fields;
+    private final int batches;
+    private final int failures;
+    private final long elapsedNanos;
+
+    WarmUpReport(int fields, int batches, int failures, long elapsedNanos) {
+        this.fields = fields;
+        this.batches = batches;
+        this.failures = failures;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The number of annotated fields that were loaded.
+     */
+    public int fields() {
+        return this.fields;
+    }
+
+    /**
+     * @return The number of batches in which the fields were loaded.
+     */
+    public int batches() {
+        return this.batches;
+    }
+
+    /**
+     * @return The number of fields that could not be loaded. These fields are
+     * loaded again (and fail again) when they are injected.
+     */
+    public int failures() {
+        return this.failures;
+    }
+
+    /**
+     * Returns the time that the warm-up took.
+     * @param unit The unit in which the time should be returned.
+     * @return The elapsed time in the given unit.
+     */
+    public long elapsed(TimeUnit unit) {
+        return unit.convert(this.elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Warmed up %d field(s) in %d batch(es) in %d ms (%d failure(s)).",
+            this.fields, this.batches, elapsed(TimeUnit.MILLISECONDS), this.failures);
+    }
+}
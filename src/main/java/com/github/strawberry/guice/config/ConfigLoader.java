@@ -30,6 +30,7 @@ import org.apache.commons.lang3.ArrayUtils;
 
 import com.github.strawberry.guice.Redis;
 import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.FieldMetrics;
 import static com.github.strawberry.util.Types.BOOLEAN;
 import static com.github.strawberry.util.Types.TRUE;
 import static com.github.strawberry.util.Types.collectionImplementationOf;
@@ -37,6 +38,7 @@ import static com.github.strawberry.util.Types.genericTypeOf;
 import static com.github.strawberry.util.Types.isAssignableTo;
 import static com.github.strawberry.util.Types.isEqualTo;
 import static com.github.strawberry.util.Types.mapImplementationOf;
+import com.google.common.base.Charsets;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -67,6 +69,7 @@ import redis.clients.jedis.Jedis;
 public final class ConfigLoader extends CacheLoader<Field, Option> {
 
     private final Map properties;
+    private final FieldMetrics metrics;
 
     /**
      * Internal enum to match against all supported Redis data types.
@@ -78,25 +81,43 @@ public final class ConfigLoader extends CacheLoader<Field, Option> {
      * @param pool The pool of connections to a Redis database.
      */
     public ConfigLoader(Map properties) {
+        this(properties, null);
+    }
+
+    /**
+     * Initializes a newly created {@code ConfigLoader} with the given
+     * properties, recording the number of times that every field is loaded
+     * and the time spent loading it in the given registry.
+     * @param properties The properties to load field values from.
+     * @param metrics The registry of field statistics.
+     */
+    public ConfigLoader(Map properties, FieldMetrics metrics) {
         this.properties = properties;
+        this.metrics = metrics;
     }
 
     @Override
     public Option load(Field field) throws Exception {
-        return getFromProperties(properties, field, field.getAnnotation(Config.class));
+        Config annotation = field.getAnnotation(Config.class);
+        long start = System.nanoTime();
+        Set<String> matchingKeys = getKeys(properties, annotation.value());
+        long discovered = System.nanoTime();
+        Option value = getFromProperties(properties, field, annotation, matchingKeys);
+        if (this.metrics != null) {
+            this.metrics.statsOf(field).loaded(discovered - start, 0, 0, System.nanoTime() - discovered);
+        }
+        return value;
     }
 
 
-    private static Option getFromProperties(Map properties, final Field field, final Config annotation) {
+    private static Option getFromProperties(Map properties, final Field field, final Config annotation, Set<String> matchingKeys) {
 
         Object value = null;
         
         Class<?> fieldType = field.getType();
 
-        String pattern = annotation.value();
         boolean allowNull = annotation.allowNull();
 
-        Set<String> matchingKeys = getKeys(properties, pattern);
         if (matchingKeys.size() == 1) {
             String matchingKey = Iterables.getOnlyElement(matchingKeys);
             if (fieldType.equals(char[].class)) {
@@ -114,12 +135,12 @@ public final class ConfigLoader extends CacheLoader<Field, Option> {
                 value = properties.get(matchingKey);
             } else if (fieldType.equals(byte[].class)) {
                 if (properties.containsKey(matchingKey)) {
-                    value = properties.get(matchingKey).toString().getBytes();
+                    value = properties.get(matchingKey).toString().getBytes(Charsets.UTF_8);
                 } else {
                     value = null;
                 }
             } else if (fieldType.equals(Byte[].class)) {
-                value = ArrayUtils.toObject(properties.get(matchingKey).toString().getBytes());
+                value = ArrayUtils.toObject(properties.get(matchingKey).toString().getBytes(Charsets.UTF_8));
             } else if (fieldType.equals(boolean.class) || fieldType.equals(Boolean.class)) {
                 String toConvert = properties.get(matchingKey).toString();
                 if (BOOLEAN.matcher(toConvert).matches()) {
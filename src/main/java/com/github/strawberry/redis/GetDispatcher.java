@@ -0,0 +1,182 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+
+import fj.F;
+
+/**
+ * Collects the literal keys that are read by concurrent loads over a short
+ * window, and reads all of them with a single {@code MGET}. The first thread
+ * that requests a key in a window leads the window: it waits until either
+ * the window has passed or enough keys have been collected, and then issues
+ * the {@code MGET} on behalf of every thread that joined the window. A key
+ * that is requested more than once within a window is only read once.
+ *
+ * @author Wiehann Matthysen
+ */
+final class GetDispatcher {
+
+    private final F<List<String>, List<byte[]>> mget;
+    private final long windowNanos;
+    private final int maxKeys;
+
+    private final Object lock = new Object();
+    private Window current;
+
+    /**
+     * @param mget Reads the values of the given keys with a single
+     * {@code MGET}.
+     * @param windowNanos The time that the first key of a window waits for
+     * other keys to be requested.
+     * @param maxKeys The number of keys after which a window is read without
+     * waiting any longer.
+     */
+    GetDispatcher(F<List<String>, List<byte[]>> mget, long windowNanos, int maxKeys) {
+        this.mget = mget;
+        this.windowNanos = windowNanos;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * The keys that are requested within one window, and the values that
+     * they are waiting for.
+     */
+    private static final class Window {
+
+        final Map<String, SettableFuture<byte[]>> values = Maps.newLinkedHashMap();
+        boolean closed;
+    }
+
+    /**
+     * Reads the values of the given keys, together with the keys that other
+     * threads request at about the same time.
+     * @param keys The keys to read.
+     * @return The raw value of every key, or {@code null} for keys that do
+     * not exist.
+     */
+    Map<String, byte[]> get(Collection<String> keys) {
+        Window window;
+        boolean leader = false;
+        Map<String, SettableFuture<byte[]>> futures = Maps.newHashMap();
+        synchronized (this.lock) {
+            window = this.current;
+            if (window == null) {
+                window = new Window();
+                this.current = window;
+                leader = true;
+            }
+            for (String key : keys) {
+                SettableFuture<byte[]> future = window.values.get(key);
+                if (future == null) {
+                    future = SettableFuture.create();
+                    window.values.put(key, future);
+                }
+                futures.put(key, future);
+            }
+            if (window.values.size() >= this.maxKeys) {
+                close(window);
+            }
+            if (leader) {
+                long deadline = System.nanoTime() + this.windowNanos;
+                long remaining = this.windowNanos;
+                while (!window.closed && remaining > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this.lock, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.nanoTime();
+                }
+                close(window);
+            }
+        }
+        if (leader) {
+            flush(window);
+        }
+        Map<String, byte[]> values = Maps.newHashMap();
+        for (Map.Entry<String, SettableFuture<byte[]>> future : futures.entrySet()) {
+            values.put(future.getKey(), valueOf(future.getValue()));
+        }
+        return values;
+    }
+
+    /**
+     * Stops the given window from taking any more keys. Must be called while
+     * holding the lock.
+     */
+    private void close(Window window) {
+        if (!window.closed) {
+            window.closed = true;
+            if (this.current == window) {
+                this.current = null;
+            }
+            this.lock.notifyAll();
+        }
+    }
+
+    private void flush(Window window) {
+        List<String> keys = ImmutableList.copyOf(window.values.keySet());
+        try {
+            List<byte[]> values = this.mget.f(keys);
+            for (int i = 0; i < keys.size(); ++i) {
+                window.values.get(keys.get(i)).set(values.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (SettableFuture<byte[]> future : window.values.values()) {
+                future.setException(e);
+            }
+            throw e;
+        } catch (Error e) {
+            for (SettableFuture<byte[]> future : window.values.values()) {
+                future.setException(e);
+            }
+            throw e;
+        }
+    }
+
+    private static byte[] valueOf(SettableFuture<byte[]> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import com.github.strawberry.guice.Redis;
+
+/**
+ * {@code KeyPattern} holds the parsed form of a key-pattern as specified by
+ * {@link Redis#value()}. Whoever loads or invalidates fields keeps the parsed
+ * key-pattern of every field it encounters (typically when the
+ * {@link com.google.inject.Injector} first encounters the annotated field), so
+ * that the pattern does not need to be inspected again.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class KeyPattern {
+
+    private final String pattern;
+    private final boolean literal;
+
+    private KeyPattern(String pattern) {
+        this.pattern = pattern;
+        this.literal = isLiteral(pattern);
+    }
+
+    /**
+     * Parses the given key-pattern string.
+     * @param pattern The glob-style key-pattern (see {@link Redis#value()}).
+     * @return The parsed key-pattern.
+     */
+    public static KeyPattern of(String pattern) {
+        return new KeyPattern(pattern);
+    }
+
+    /**
+     * Parses the key-pattern of the given {@link Redis}-annotation.
+     * @param annotation The annotation of which the key-pattern is parsed.
+     * @return The parsed key-pattern.
+     */
+    public static KeyPattern of(Redis annotation) {
+        return of(annotation.value());
+    }
+
+    private static boolean isLiteral(String pattern) {
+        for (int i = 0; i < pattern.length(); ++i) {
+            switch (pattern.charAt(i)) {
+                case '*':
+                case '?':
+                case '[':
+                case '\\':
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the given key matches this key-pattern, following the
+     * same glob-style rules that Redis applies for {@code KEYS} and
+     * {@code SCAN}.
+     * @param key The key to match against.
+     * @return True if the key matches, false otherwise.
+     */
+    public boolean matches(String key) {
+        return this.literal ? this.pattern.equals(key) : matches(this.pattern, 0, key, 0);
+    }
+
+    private static boolean matches(String pattern, int p, String string, int s) {
+        int patternLength = pattern.length();
+        int stringLength = string.length();
+        while (p < patternLength) {
+            switch (pattern.charAt(p)) {
+                case '*': {
+                    while (p + 1 < patternLength && pattern.charAt(p + 1) == '*') {
+                        ++p;
+                    }
+                    if (p + 1 == patternLength) {
+                        return true;
+                    }
+                    for (int i = s; i <= stringLength; ++i) {
+                        if (matches(pattern, p + 1, string, i)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                case '?': {
+                    if (s == stringLength) {
+                        return false;
+                    }
+                    ++s;
+                } break;
+                case '[': {
+                    if (s == stringLength) {
+                        return false;
+                    }
+                    char c = string.charAt(s);
+                    ++p;
+                    boolean not = p < patternLength && pattern.charAt(p) == '^';
+                    if (not) {
+                        ++p;
+                    }
+                    boolean match = false;
+                    while (true) {
+                        if (p == patternLength) {
+                            // Unterminated set; treat end of pattern as ']'.
+                            --p;
+                            break;
+                        }
+                        char current = pattern.charAt(p);
+                        if (current == '\\' && p + 1 < patternLength) {
+                            ++p;
+                            match |= pattern.charAt(p) == c;
+                        } else if (current == ']') {
+                            break;
+                        } else if (p + 2 < patternLength && pattern.charAt(p + 1) == '-') {
+                            char start = (char) Math.min(current, pattern.charAt(p + 2));
+                            char end = (char) Math.max(current, pattern.charAt(p + 2));
+                            p += 2;
+                            match |= c >= start && c <= end;
+                        } else {
+                            match |= current == c;
+                        }
+                        ++p;
+                    }
+                    if (not == match) {
+                        return false;
+                    }
+                    ++s;
+                } break;
+                case '\\': {
+                    if (p + 1 < patternLength) {
+                        ++p;
+                    }
+                    if (s == stringLength || pattern.charAt(p) != string.charAt(s)) {
+                        return false;
+                    }
+                    ++s;
+                } break;
+                default: {
+                    if (s == stringLength || pattern.charAt(p) != string.charAt(s)) {
+                        return false;
+                    }
+                    ++s;
+                } break;
+            }
+            ++p;
+        }
+        return s == stringLength;
+    }
+
+    /**
+     * @return The key-pattern as it was specified in {@link Redis#value()}.
+     */
+    public String pattern() {
+        return this.pattern;
+    }
+
+    /**
+     * @return True if the key-pattern contains no glob-style metacharacters
+     * (and therefore matches exactly one key), false otherwise.
+     */
+    public boolean isLiteral() {
+        return this.literal;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+}
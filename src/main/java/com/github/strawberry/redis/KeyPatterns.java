@@ -0,0 +1,67 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+
+import com.github.strawberry.guice.Redis;
+
+/**
+ * Holds the parsed key-pattern (see {@link KeyPattern}) of every
+ * {@link Redis}-annotated field that its owner (such as a {@link RedisLoader}
+ * or a {@link com.github.strawberry.guice.RedisModule}) has encountered. The
+ * key-pattern of a field is parsed once, when the field is first encountered,
+ * and is kept for as long as its owner is, so that loading a field or
+ * matching a changed key against the fields does not parse their key-patterns
+ * again.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class KeyPatterns {
+
+    private final ConcurrentMap<Field, KeyPattern> patterns = Maps.newConcurrentMap();
+
+    /**
+     * Returns the key-pattern of the given field, which is parsed if the field
+     * was not encountered before.
+     * @param field The {@link Redis}-annotated field.
+     * @return The parsed key-pattern of the field.
+     */
+    public KeyPattern of(Field field) {
+        KeyPattern pattern = this.patterns.get(field);
+        if (pattern == null) {
+            pattern = KeyPattern.of(field.getAnnotation(Redis.class));
+            KeyPattern existing = this.patterns.putIfAbsent(field, pattern);
+            if (existing != null) {
+                pattern = existing;
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * @return The key-patterns of all the fields that were encountered.
+     */
+    public Iterable<Map.Entry<Field, KeyPattern>> entries() {
+        return this.patterns.entrySet();
+    }
+}
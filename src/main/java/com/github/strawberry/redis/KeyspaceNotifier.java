@@ -0,0 +1,258 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * {@code KeyspaceNotifier} subscribes to the
+ * <a href="http://redis.io/topics/notifications">keyspace notifications</a>
+ * ({@code __keyspace@N__:*}) of a Redis database and informs its
+ * {@link Listener}s about every key that was changed. The subscription uses a
+ * dedicated connection (taken from the given {@link JedisPool} for as long as
+ * the notifier runs) on a background daemon thread. If the connection is lost,
+ * the listeners are {@linkplain Listener#reset() reset} (since notifications
+ * might have been missed) and the subscription is set up again.
+ * 
+ * <p>
+ * <b>Note</b>: Redis only publishes keyspace notifications if it was
+ * configured to do so, for example with {@code notify-keyspace-events KA}.
+ * </p>
+ *
+ * @author Wiehann Matthysen
+ */
+public final class KeyspaceNotifier {
+
+    /**
+     * Receives the keys that were changed in the Redis database.
+     */
+    public static interface Listener {
+
+        /**
+         * Called whenever the value at the given key was changed (modified,
+         * deleted, expired or evicted).
+         * @param key The key that was changed.
+         */
+        public void changed(String key);
+
+        /**
+         * Called when notifications might have been missed, in which case any
+         * key should be considered to have changed.
+         */
+        public void reset();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(KeyspaceNotifier.class.getName());
+
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final JedisPool pool;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private final Object lock = new Object();
+    private volatile boolean running = false;
+    private Thread thread;
+    private JedisPubSub subscription;
+
+    /**
+     * Initializes a newly created {@code KeyspaceNotifier} that will subscribe
+     * to the keyspace notifications of the database that the connections in
+     * the given {@code JedisPool} use.
+     * @param pool The pool of connections to a Redis database.
+     */
+    public KeyspaceNotifier(JedisPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Registers the given listener to receive the keys that are changed.
+     * @param listener The listener to register.
+     * @return This notifier.
+     */
+    public KeyspaceNotifier addListener(Listener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Starts listening for keyspace notifications on a background thread.
+     * Calling this method while the notifier is running has no effect.
+     * @return This notifier.
+     */
+    public KeyspaceNotifier start() {
+        synchronized (this.lock) {
+            if (!this.running) {
+                this.running = true;
+                this.thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        subscribe();
+                    }
+                }, "strawberry-keyspace-notifier");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Stops listening for keyspace notifications and returns the dedicated
+     * connection to the pool.
+     */
+    public void stop() {
+        synchronized (this.lock) {
+            this.running = false;
+            if (this.subscription != null && this.subscription.isSubscribed()) {
+                this.subscription.punsubscribe();
+            }
+            if (this.thread != null) {
+                this.thread.interrupt();
+                this.thread = null;
+            }
+        }
+    }
+
+    /**
+     * @return True if the notifier is currently subscribed to keyspace
+     * notifications, false otherwise.
+     */
+    public boolean isSubscribed() {
+        synchronized (this.lock) {
+            return this.subscription != null && this.subscription.isSubscribed();
+        }
+    }
+
+    private void subscribe() {
+        while (this.running) {
+            Jedis jedis = null;
+            boolean broken = false;
+            try {
+                jedis = this.pool.getResource();
+                final String prefix = String.format("__keyspace@%s__:", jedis.getDB());
+                JedisPubSub pubSub = new Subscription(prefix);
+                synchronized (this.lock) {
+                    if (!this.running) {
+                        break;
+                    }
+                    this.subscription = pubSub;
+                }
+                jedis.psubscribe(pubSub, prefix + "*");
+            } catch (JedisConnectionException e) {
+                broken = true;
+            } catch (RuntimeException e) {
+                // Such as an error reply to the subscription, which should not
+                // silently end the notifications.
+                LOGGER.log(Level.WARNING, "Subscription to keyspace notifications failed.", e);
+                broken = true;
+            } finally {
+                synchronized (this.lock) {
+                    this.subscription = null;
+                }
+                if (jedis != null) {
+                    if (broken) {
+                        this.pool.returnBrokenResource(jedis);
+                    } else {
+                        this.pool.returnResource(jedis);
+                    }
+                }
+            }
+            if (this.running) {
+                // Notifications might have been missed while the
+                // subscription was down.
+                reset();
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Informs the listeners about the given changed key. A listener that
+     * fails does not keep the other listeners (or later notifications) from
+     * being informed.
+     */
+    private void changed(String key) {
+        for (Listener listener : this.listeners) {
+            try {
+                listener.changed(key);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, String.format("Listener could not handle changed key: (%s).", key), e);
+            }
+        }
+    }
+
+    private void reset() {
+        for (Listener listener : this.listeners) {
+            try {
+                listener.reset();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Listener could not be reset.", e);
+            }
+        }
+    }
+
+    private final class Subscription extends JedisPubSub {
+
+        private final String prefix;
+
+        Subscription(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            if (channel.startsWith(this.prefix)) {
+                changed(channel.substring(this.prefix.length()));
+            }
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            // A fresh subscription might have missed notifications that were
+            // published before it was set up.
+            reset();
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {}
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {}
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {}
+
+        @Override
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {}
+    }
+}
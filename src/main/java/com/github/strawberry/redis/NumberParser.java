@@ -0,0 +1,183 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Parses numbers directly from the raw bytes of a Redis reply, without
+ * decoding these to a {@link String} first. Only the plain decimal forms that
+ * numbers are usually stored in (an optional sign, digits and an optional
+ * fraction) are parsed from the bytes. Anything else, such as exponents,
+ * surrounding whitespace or numbers with too many digits to be parsed
+ * exactly, is decoded and handed to the matching {@code parse} method of the
+ * JDK. The results (and the {@link NumberFormatException}s) are therefore the
+ * same as when parsing the decoded string.
+ *
+ * @author Wiehann Matthysen
+ */
+final class NumberParser {
+
+    /**
+     * The character set that keys and string values are encoded with.
+     */
+    static final Charset CHARSET = Charsets.UTF_8;
+
+    // The largest number of digits of which the value always fits in a long.
+    private static final int MAX_LONG_DIGITS = 18;
+
+    // Integers up to 2^53 (and 2^24) and powers of ten up to 10^22 (and 10^10)
+    // are exactly representable as double (and float), so dividing the one by
+    // the other yields the correctly rounded result.
+    private static final long MAX_DOUBLE_MANTISSA = 1L << 53;
+    private static final long MAX_FLOAT_MANTISSA = 1L << 24;
+    private static final double[] DOUBLE_POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private NumberParser() {}
+
+    /**
+     * The result of scanning a plain decimal number: its digits as an unscaled
+     * value and the number of digits after the decimal point.
+     */
+    private static final class Decimal {
+
+        final long unscaled;
+        final int scale;
+
+        Decimal(long unscaled, int scale) {
+            this.unscaled = unscaled;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * Scans the given bytes as an optional sign followed by at least one digit
+     * and, if {@code fraction} is true, an optional fraction. Returns
+     * {@code null} if the bytes are not in this form, or if they contain too
+     * many digits to fit in a long.
+     */
+    private static Decimal scan(byte[] bytes, boolean fraction) {
+        int length = bytes.length;
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (bytes[0] == '-' || bytes[0] == '+')) {
+            negative = bytes[0] == '-';
+            ++i;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < length; ++i) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_LONG_DIGITS) {
+                    return null;
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                if (scale >= 0) {
+                    ++scale;
+                }
+            } else if (b == '.' && fraction && scale < 0) {
+                scale = 0;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0 || scale == 0) {
+            return null;
+        }
+        return new Decimal(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    private static String decode(byte[] bytes) {
+        return new String(bytes, CHARSET);
+    }
+
+    static long parseLong(byte[] bytes) {
+        Decimal decimal = scan(bytes, false);
+        return decimal != null ? decimal.unscaled : Long.parseLong(decode(bytes));
+    }
+
+    static int parseInt(byte[] bytes) {
+        Decimal decimal = scan(bytes, false);
+        if (decimal != null && decimal.unscaled >= Integer.MIN_VALUE && decimal.unscaled <= Integer.MAX_VALUE) {
+            return (int) decimal.unscaled;
+        }
+        return Integer.parseInt(decode(bytes));
+    }
+
+    static short parseShort(byte[] bytes) {
+        Decimal decimal = scan(bytes, false);
+        if (decimal != null && decimal.unscaled >= Short.MIN_VALUE && decimal.unscaled <= Short.MAX_VALUE) {
+            return (short) decimal.unscaled;
+        }
+        return Short.parseShort(decode(bytes));
+    }
+
+    static byte parseByte(byte[] bytes) {
+        Decimal decimal = scan(bytes, false);
+        if (decimal != null && decimal.unscaled >= Byte.MIN_VALUE && decimal.unscaled <= Byte.MAX_VALUE) {
+            return (byte) decimal.unscaled;
+        }
+        return Byte.parseByte(decode(bytes));
+    }
+
+    static BigInteger parseBigInteger(byte[] bytes) {
+        Decimal decimal = scan(bytes, false);
+        return decimal != null ? BigInteger.valueOf(decimal.unscaled) : new BigInteger(decode(bytes));
+    }
+
+    static double parseDouble(byte[] bytes) {
+        Decimal decimal = scan(bytes, true);
+        if (decimal != null && Math.abs(decimal.unscaled) <= MAX_DOUBLE_MANTISSA
+            && decimal.scale < DOUBLE_POWERS.length && !isNegativeZero(bytes, decimal)) {
+            return decimal.unscaled / DOUBLE_POWERS[decimal.scale];
+        }
+        return Double.parseDouble(decode(bytes));
+    }
+
+    static float parseFloat(byte[] bytes) {
+        Decimal decimal = scan(bytes, true);
+        if (decimal != null && Math.abs(decimal.unscaled) <= MAX_FLOAT_MANTISSA
+            && decimal.scale < FLOAT_POWERS.length && !isNegativeZero(bytes, decimal)) {
+            return decimal.unscaled / FLOAT_POWERS[decimal.scale];
+        }
+        return Float.parseFloat(decode(bytes));
+    }
+
+    static BigDecimal parseBigDecimal(byte[] bytes) {
+        Decimal decimal = scan(bytes, true);
+        return decimal != null ? BigDecimal.valueOf(decimal.unscaled, decimal.scale) : new BigDecimal(decode(bytes));
+    }
+
+    private static boolean isNegativeZero(byte[] bytes, Decimal decimal) {
+        // The sign of a zero is lost in the unscaled value, so "-0" and "-0.0"
+        // are left to the JDK.
+        return decimal.unscaled == 0 && bytes[0] == '-';
+    }
+}
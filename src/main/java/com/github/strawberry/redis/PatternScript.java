@@ -0,0 +1,154 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import fj.P;
+import fj.P2;
+
+/**
+ * A Lua script that resolves a key-pattern on the Redis server itself. A
+ * single {@code EVALSHA} call returns every matching key together with its
+ * data type and contents as a flat reply of {@code (key, type, payload)}
+ * triples. The script is shipped to the server once with
+ * {@code SCRIPT LOAD}, and is only loaded again if the server no longer knows
+ * about it (for example after a restart or a {@code SCRIPT FLUSH}).
+ *
+ * @author Wiehann Matthysen
+ */
+final class PatternScript {
+
+    private static final String SOURCE =
+        "local result = {}\n" +
+        "local cursor = '0'\n" +
+        "repeat\n" +
+        "  local reply = redis.call('SCAN', cursor, 'MATCH', ARGV[1], 'COUNT', ARGV[2])\n" +
+        "  cursor = reply[1]\n" +
+        "  for _, key in ipairs(reply[2]) do\n" +
+        "    local type = redis.call('TYPE', key).ok\n" +
+        "    local payload = nil\n" +
+        "    if type == 'string' then\n" +
+        "      payload = redis.call('GET', key)\n" +
+        "    elseif type == 'hash' then\n" +
+        "      payload = redis.call('HGETALL', key)\n" +
+        "    elseif type == 'list' then\n" +
+        "      payload = redis.call('LRANGE', key, 0, -1)\n" +
+        "    elseif type == 'set' then\n" +
+        "      payload = redis.call('SMEMBERS', key)\n" +
+        "    elseif type == 'zset' then\n" +
+        "      payload = redis.call('ZRANGE', key, 0, -1)\n" +
+        "    end\n" +
+        "    if payload then\n" +
+        "      result[#result + 1] = key\n" +
+        "      result[#result + 1] = type\n" +
+        "      result[#result + 1] = payload\n" +
+        "    end\n" +
+        "  end\n" +
+        "until cursor == '0'\n" +
+        "return result\n";
+
+    private volatile byte[] sha;
+
+    /**
+     * Resolves the given key-pattern to the keys that it matches, mapped to
+     * their data type and contents. The contents of string values are returned
+     * as raw bytes, hashes as maps and lists, sets and sorted sets as
+     * collections of strings.
+     * @param jedis The connection to the Redis database.
+     * @param pattern The glob-style key-pattern to resolve.
+     * @param scanCount The number of elements that Redis should inspect with
+     * every {@code SCAN} call while discovering the matching keys.
+     * @return The matching keys in sorted order.
+     */
+    SortedMap<String, P2<RedisType, Object>> resolve(Jedis jedis, String pattern, int scanCount) {
+        List<byte[]> args = ImmutableList.of(SafeEncoder.encode(pattern), SafeEncoder.encode(String.valueOf(scanCount)));
+        List<byte[]> keys = ImmutableList.of();
+        Object reply;
+        try {
+            reply = jedis.evalsha(sha(jedis, false), keys, args);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            reply = jedis.evalsha(sha(jedis, true), keys, args);
+        }
+        return decode((List<?>) reply);
+    }
+
+    private byte[] sha(Jedis jedis, boolean reload) {
+        byte[] current = this.sha;
+        if (current == null || reload) {
+            current = jedis.scriptLoad(SafeEncoder.encode(SOURCE));
+            this.sha = current;
+        }
+        return current;
+    }
+
+    private static SortedMap<String, P2<RedisType, Object>> decode(List<?> reply) {
+        SortedMap<String, P2<RedisType, Object>> values = Maps.newTreeMap();
+        for (int i = 0; i + 2 < reply.size(); i += 3) {
+            String key = SafeEncoder.encode((byte[]) reply.get(i));
+            RedisType type = RedisType.of(SafeEncoder.encode((byte[]) reply.get(i + 1)));
+            Object payload = reply.get(i + 2);
+            switch (type) {
+                case STRING: {
+                    values.put(key, P.p(type, payload));
+                } break;
+                case HASH: {
+                    values.put(key, P.p(type, (Object) hashOf((List<?>) payload)));
+                } break;
+                case LIST: {
+                    values.put(key, P.p(type, (Object) stringsOf((List<?>) payload, Lists.<String>newArrayList())));
+                } break;
+                case SET:
+                case ZSET: {
+                    values.put(key, P.p(type, (Object) stringsOf((List<?>) payload, Sets.<String>newLinkedHashSet())));
+                } break;
+            }
+        }
+        return values;
+    }
+
+    private static Map<String, String> hashOf(List<?> payload) {
+        Map<String, String> hash = Maps.newHashMap();
+        for (int i = 0; i + 1 < payload.size(); i += 2) {
+            hash.put(SafeEncoder.encode((byte[]) payload.get(i)), SafeEncoder.encode((byte[]) payload.get(i + 1)));
+        }
+        return hash;
+    }
+
+    private static <C extends Collection<String>> C stringsOf(List<?> payload, C strings) {
+        for (Object element : payload) {
+            strings.add(SafeEncoder.encode((byte[]) element));
+        }
+        return strings;
+    }
+}
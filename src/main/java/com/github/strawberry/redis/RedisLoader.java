@@ -18,30 +18,63 @@
 package com.github.strawberry.redis;
 
 import com.github.strawberry.guice.ConversionException;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.ArrayUtils;
 
 import com.github.strawberry.guice.Redis;
+import com.github.strawberry.util.FieldMetrics;
+import com.github.strawberry.util.FieldStats;
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
 
 import fj.F;
+import fj.Function;
+import fj.P;
+import fj.P2;
 import fj.data.Option;
 
+import static com.github.strawberry.util.JedisUtil.hscan;
+import static com.github.strawberry.util.JedisUtil.scan;
+import static com.github.strawberry.util.JedisUtil.sscan;
 import static com.github.strawberry.util.JedisUtil.using;
 import static com.github.strawberry.util.Types.BOOLEAN;
 import static com.github.strawberry.util.Types.TRUE;
@@ -62,13 +95,49 @@ import static com.github.strawberry.util.Types.mapImplementationOf;
 public final class RedisLoader extends CacheLoader<Field, Option> {
 
     /**
-     * Internal enum to match against all supported Redis data types.
+     * The strategies that {@code RedisLoader} can use to load the values of
+     * fields whose key-patterns are not literal (i.e. that need to be
+     * resolved to the keys that they match).
      */
-    private enum JedisType {
-        STRING, HASH, LIST, SET, ZSET
+    public enum Strategy {
+
+        /**
+         * Discovers matching keys with {@code SCAN}, after which the data types
+         * and contents of these keys are read in two pipelined batches.
+         */
+        PIPELINED,
+
+        /**
+         * Resolves matching keys, their data types and their contents on the
+         * Redis server with a single {@code EVALSHA} of a cached Lua script.
+         * This saves the round trips (and transfer) of key discovery at the
+         * cost of blocking the Redis server while the script runs.
+         */
+        SCRIPTED
     }
 
+    /**
+     * The default number of elements that Redis should inspect with every
+     * {@code SCAN} call while discovering the keys that match a key-pattern.
+     */
+    public static final int DEFAULT_SCAN_COUNT = 100;
+
+    private static final int MAX_ATTEMPTS = 10;
+
     private final JedisPool pool;
+    private final ShardedJedisPool shardedPool;
+    private final Executor executor;
+    private final int scanCount;
+    private final int chunkSize;
+    private final boolean consistent;
+    private final PatternScript script;
+    private final Cache<Field, Boolean> absent;
+    private final KeyPatterns patterns = new KeyPatterns();
+    private final FieldMetrics metrics;
+    private final RedisSnapshot snapshot;
+    private final ReplicaRouter router;
+    private final GetDispatcher dispatcher;
+    private final RedisPayloadCache shared;
 
     /**
      * Initializes a newly created {@code RedisLoader} with the given
@@ -77,12 +146,459 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
      * @param pool The pool of connections to a Redis database.
      */
     public RedisLoader(JedisPool pool) {
-        this.pool = pool;
+        this(pool, DEFAULT_SCAN_COUNT);
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} with the given
+     * {@link JedisPool} to be used as source for connections to a Redis
+     * database.
+     * @param pool The pool of connections to a Redis database.
+     * @param scanCount The number of elements that Redis should inspect with
+     * every {@code SCAN} call while discovering the keys that match a
+     * key-pattern (see {@link Redis#value()}).
+     */
+    public RedisLoader(JedisPool pool, int scanCount) {
+        this(pool, scanCount, Strategy.PIPELINED);
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} with the given
+     * {@link JedisPool} to be used as source for connections to a Redis
+     * database.
+     * @param pool The pool of connections to a Redis database.
+     * @param scanCount The number of elements that Redis should inspect with
+     * every {@code SCAN} call while discovering the keys that match a
+     * key-pattern (see {@link Redis#value()}).
+     * @param strategy The strategy to use when loading the values of fields
+     * whose key-patterns are not literal.
+     */
+    public RedisLoader(JedisPool pool, int scanCount, Strategy strategy) {
+        this(builder(pool).scanCount(scanCount).strategy(strategy));
+    }
+
+    /**
+     * Initializes a newly created {@code RedisLoader} with the given
+     * {@link ShardedJedisPool} to be used as source for connections to a
+     * number of Redis databases that each hold a shard of the keys.
+     * @param pool The pool of sharded connections.
+     */
+    public RedisLoader(ShardedJedisPool pool) {
+        this(builder(pool));
+    }
+
+    private RedisLoader(Builder builder) {
+        if (builder.shardedPool != null && !builder.replicas.isEmpty()) {
+            throw new IllegalStateException("Replicas can not be used together with a ShardedJedisPool.");
+        }
+        if (builder.shardedPool != null && builder.batchWindow > 0) {
+            throw new IllegalStateException("Batched GETs can not be used together with a ShardedJedisPool.");
+        }
+        if (builder.consistent && (builder.shardedPool != null || builder.batchWindow > 0 ||
+                builder.chunkSize > 0 || builder.strategy == Strategy.SCRIPTED)) {
+            throw new IllegalStateException(
+                "Consistent reads can not be used together with a ShardedJedisPool, batched GETs, chunked " +
+                "reads or the scripted strategy.");
+        }
+        this.pool = builder.pool;
+        this.shardedPool = builder.shardedPool;
+        this.executor = builder.executor != null || builder.shardedPool == null ?
+            builder.executor :
+            Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-shard-%d").build());
+        this.scanCount = builder.scanCount;
+        this.chunkSize = builder.chunkSize;
+        this.consistent = builder.consistent;
+        this.script = builder.strategy == Strategy.SCRIPTED ? new PatternScript() : null;
+        this.absent = builder.absentDuration > 0 ?
+            CacheBuilder.newBuilder()
+                .expireAfterWrite(builder.absentDuration, builder.absentUnit)
+                .recordStats()
+                .<Field, Boolean>build() :
+            null;
+        this.metrics = builder.metrics;
+        this.snapshot = builder.snapshot != null ? new RedisSnapshot(builder.snapshot) : null;
+        this.router = !builder.replicas.isEmpty() ?
+            new ReplicaRouter(builder.pool, builder.replicas, builder.hedgeQuantile) :
+            null;
+        this.dispatcher = builder.batchWindow > 0 ?
+            new GetDispatcher(new F<List<String>, List<byte[]>>() {
+
+                @Override
+                public List<byte[]> f(List<String> keys) {
+                    return mget(keys);
+                }
+            }, builder.batchUnit.toNanos(builder.batchWindow), builder.batchMaxKeys) :
+            null;
+        this.shared = builder.sharePayloads ?
+            new RedisPayloadCache(builder.sharedDuration, builder.sharedUnit, this.patterns) :
+            null;
+    }
+
+    /**
+     * Returns a {@link Builder} for a {@code RedisLoader} that uses the given
+     * {@link JedisPool} as source for connections to a Redis database.
+     * @param pool The pool of connections to a Redis database.
+     * @return A builder that is initialized with the default settings.
+     */
+    public static Builder builder(JedisPool pool) {
+        return new Builder(pool, null);
+    }
+
+    /**
+     * Returns a {@link Builder} for a {@code RedisLoader} that uses the given
+     * {@link ShardedJedisPool} as source for connections to a number of Redis
+     * databases that each hold a shard of the keys. A literal key is read from
+     * the shard that owns it, while the keys that match a key-pattern are
+     * discovered on all shards in parallel (see
+     * {@link Builder#executor(Executor)}).
+     * @param pool The pool of sharded connections.
+     * @return A builder that is initialized with the default settings.
+     */
+    public static Builder builder(ShardedJedisPool pool) {
+        return new Builder(null, pool);
+    }
+
+    /**
+     * {@code Builder} is used to configure the optional settings of a
+     * {@link RedisLoader} before creating it.
+     */
+    public static final class Builder {
+
+        private final JedisPool pool;
+        private final ShardedJedisPool shardedPool;
+        private Executor executor;
+        private int scanCount = DEFAULT_SCAN_COUNT;
+        private int chunkSize;
+        private Strategy strategy = Strategy.PIPELINED;
+        private long absentDuration;
+        private TimeUnit absentUnit;
+        private FieldMetrics metrics;
+        private File snapshot;
+        private List<JedisPool> replicas = ImmutableList.of();
+        private double hedgeQuantile;
+        private long batchWindow;
+        private TimeUnit batchUnit;
+        private int batchMaxKeys;
+        private boolean consistent;
+        private boolean sharePayloads;
+        private long sharedDuration;
+        private TimeUnit sharedUnit;
+
+        private Builder(JedisPool pool, ShardedJedisPool shardedPool) {
+            this.pool = pool;
+            this.shardedPool = shardedPool;
+        }
+
+        /**
+         * Sets the executor on which the shards of a {@link ShardedJedisPool}
+         * are scanned and read in parallel. Defaults to a pool of daemon
+         * threads that is created for every sharded {@link RedisLoader}.
+         * @param executor The executor of per-shard reads.
+         * @return This builder.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the number of elements that Redis should inspect with every
+         * {@code SCAN} call while discovering the keys that match a
+         * key-pattern (see {@link Redis#value()}). Defaults to
+         * {@link RedisLoader#DEFAULT_SCAN_COUNT}.
+         * @param scanCount The number of elements to inspect per call.
+         * @return This builder.
+         */
+        public Builder scanCount(int scanCount) {
+            this.scanCount = scanCount;
+            return this;
+        }
+
+        /**
+         * Reads lists, hashes, sets and sorted sets in chunks of (roughly) the
+         * given number of elements, instead of with a single command that
+         * returns the whole structure. Lists and sorted sets are read in
+         * {@code LRANGE} and {@code ZRANGE} windows, hashes and sets with
+         * {@code HSCAN} and {@code SSCAN}. This keeps Redis from being blocked
+         * by (and the heap from holding the whole reply of) a very large
+         * structure, at the cost of more round trips, and of the structure no
+         * longer being read atomically. By default, structures are read whole.
+         * Does not apply to {@link Strategy#SCRIPTED}, which reads every
+         * matching key with a single script.
+         * @param chunkSize The number of elements to read per command, or 0 to
+         * read every structure whole.
+         * @return This builder.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the strategy to use when loading the values of fields whose
+         * key-patterns are not literal. Defaults to {@link Strategy#PIPELINED}.
+         * @param strategy The loading strategy.
+         * @return This builder.
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Remembers, for the given duration, that no keys matched the
+         * key-pattern of a field. Loading such a field again within this
+         * duration returns an absent value ({@code null}, or a new non-null
+         * default if {@link Redis#allowNull()} is false) without contacting
+         * Redis. This is meant for optional keys that are usually
+         * absent, and should be kept short, as keys that are created in the
+         * meantime are only picked up once the duration has expired.
+         * @param duration The length of time that absent values are kept.
+         * @param unit The unit of {@code duration}.
+         * @return This builder.
+         */
+        public Builder cacheAbsent(long duration, TimeUnit unit) {
+            this.absentDuration = duration;
+            this.absentUnit = unit;
+            return this;
+        }
+
+        /**
+         * Records the number of times that every field is loaded, and the time
+         * spent in each phase of loading it, in the given registry (see
+         * {@link FieldStats}).
+         * @param metrics The registry of field statistics.
+         * @return This builder.
+         */
+        public Builder recordStats(FieldMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Serves the fields that are loaded for the first time from the given
+         * snapshot file (if it exists), instead of loading them from Redis.
+         * This spares Redis from being contacted for every field by every
+         * process that starts up at the same time. The raw values that are
+         * loaded from Redis are recorded, to be written to the snapshot file
+         * with {@link RedisLoader#saveSnapshot()}. Note that values served from
+         * the snapshot may be out of date, so they should be loaded again
+         * from Redis soon after (see {@link RedisLoader#hasSnapshotOf(Field)}).
+         * @param file The snapshot file.
+         * @return This builder.
+         */
+        public Builder snapshot(File file) {
+            this.snapshot = file;
+            return this;
+        }
+
+        /**
+         * Reads field values from the given replicas instead of from the
+         * primary (the pool that the builder was created with). Every load
+         * goes to the replica with the lowest recent latency, and falls back
+         * to the other replicas (and finally to the primary) if it fails.
+         * Replicas are not supported for a {@link ShardedJedisPool}.
+         * @param replicas The pools of connections to the replicas.
+         * @return This builder.
+         */
+        public Builder replicas(JedisPool... replicas) {
+            this.replicas = ImmutableList.copyOf(replicas);
+            return this;
+        }
+
+        /**
+         * Sends a load that takes longer than the given percentile of the
+         * latencies of its replica to the next replica as well, and uses
+         * whichever answer arrives first (see
+         * {@link Builder#replicas(JedisPool...)}). Hedging starts once a
+         * replica has been read from a number of times.
+         * @param quantile The percentile (between 0 and 1, for example 0.95)
+         * after which a load is hedged.
+         * @return This builder.
+         */
+        public Builder hedgeAfter(double quantile) {
+            this.hedgeQuantile = quantile;
+            return this;
+        }
+
+        /**
+         * Reads the values of fields with a literal key (that are not injected
+         * into a map or collection) together with those of concurrent loads,
+         * with a single {@code MGET}. A load waits for at most the given
+         * window for other loads to join it, or until the given number of
+         * keys has been collected, whichever comes first. This trades a little
+         * latency for fewer round trips and connection checkouts when many
+         * threads load fields at the same time. Can not be used together with
+         * a {@link ShardedJedisPool}.
+         * @param window The time that a load waits for other loads.
+         * @param unit The unit of {@code window}.
+         * @param maxKeys The number of keys after which the values are read
+         * without waiting any longer.
+         * @return This builder.
+         */
+        public Builder batchGets(long window, TimeUnit unit, int maxKeys) {
+            this.batchWindow = window;
+            this.batchUnit = unit;
+            this.batchMaxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Reads the values of all the fields that are loaded together (such as
+         * the fields of an object that is injected) at a single point in
+         * time, so that an object never sees some of its keys before and
+         * others after a change. The keys are read in the usual two pipelined
+         * batches, but the second batch is sent as a {@code MULTI}/{@code EXEC}
+         * transaction after all keys have been {@code WATCH}ed by the first,
+         * and both are sent again if any of the keys were changed in between.
+         * If only the first batch is needed, it is sent as a transaction by
+         * itself. Note that keys that are created after the keys matching a
+         * key-pattern have been discovered are only picked up by the next
+         * load. Can not be used together with a {@link ShardedJedisPool},
+         * {@link Builder#batchGets(long, TimeUnit, int)},
+         * {@link Builder#chunkSize(int)} or {@link Strategy#SCRIPTED}.
+         * @return This builder.
+         */
+        public Builder consistentReads() {
+            this.consistent = true;
+            return this;
+        }
+
+        /**
+         * Keeps the raw values that are loaded for every key-pattern, so that
+         * fields with the same key-pattern share a single read from Redis, as
+         * well as the instance that the raw values are converted to for every
+         * field type. Fields with the same key-pattern and type are then
+         * injected with the same instance, which should therefore not be
+         * modified. Only fields that are injected with the whole values of
+         * their keys (see {@link Redis#field()} and {@link Redis#start()})
+         * share their values. The raw values are kept until the keys that
+         * they were loaded from are changed, which should be signalled with
+         * {@link RedisLoader#invalidatePayloads(String)}.
+         * @return This builder.
+         */
+        public Builder sharePayloads() {
+            return sharePayloads(0, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Keeps the raw values that are loaded for every key-pattern for the
+         * given duration (see {@link Builder#sharePayloads()}), after which
+         * they are loaded from Redis again.
+         * @param duration The length of time that raw values are kept.
+         * @param unit The unit of {@code duration}.
+         * @return This builder.
+         */
+        public Builder sharePayloads(long duration, TimeUnit unit) {
+            this.sharePayloads = true;
+            this.sharedDuration = duration;
+            this.sharedUnit = unit;
+            return this;
+        }
+
+        /**
+         * @return A new {@link RedisLoader} with the configured settings.
+         */
+        public RedisLoader build() {
+            return new RedisLoader(this);
+        }
+    }
+
+    /**
+     * Returns the statistics of the values that were kept because no keys
+     * matched the key-pattern of their field (see
+     * {@link Builder#cacheAbsent(long, TimeUnit)}). A hit means that a Redis
+     * lookup was saved. These statistics are empty if absent values are not
+     * kept.
+     * @return The statistics of the absent values.
+     */
+    public CacheStats absentStats() {
+        return this.absent != null ? this.absent.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the {@link Cache} of the fields for which no keys matched their
+     * key-pattern, or {@code null} if absent values are not kept. Only the
+     * fact that a field is absent is kept, its default value is created anew
+     * every time that it is loaded.
+     * @return The cache of absent fields.
+     */
+    public Cache<Field, Boolean> absentCache() {
+        return this.absent;
+    }
+
+    /**
+     * Discards the raw values that are shared by fields (see
+     * {@link Builder#sharePayloads()}) whose key-pattern matches the given
+     * key, so that these fields are loaded from Redis again. A load that was
+     * underway does not keep its raw values either.
+     * @param redisKey The key that was changed.
+     */
+    public void invalidatePayloads(String redisKey) {
+        if (this.shared != null) {
+            this.shared.invalidate(redisKey);
+        }
+    }
+
+    /**
+     * Discards all the raw values that are shared by fields (see
+     * {@link Builder#sharePayloads()}).
+     */
+    public void invalidatePayloads() {
+        if (this.shared != null) {
+            this.shared.invalidateAll();
+        }
+    }
+
+    /**
+     * Determines whether the given field would be served from the snapshot
+     * (see {@link Builder#snapshot(File)}) the next time that it is loaded.
+     * @param field The field to check.
+     * @return True if the field has not been served from the snapshot yet and
+     * its key-pattern is in the snapshot, false otherwise.
+     */
+    public boolean hasSnapshotOf(Field field) {
+        return this.snapshot != null && isWholeValue(field) && this.snapshot.contains(field);
+    }
+
+    /**
+     * Writes the raw values that were loaded from Redis to the snapshot file
+     * (see {@link Builder#snapshot(File)}). Does nothing if no snapshot file
+     * was configured.
+     * @throws IOException if the snapshot file could not be written.
+     */
+    public void saveSnapshot() throws IOException {
+        if (this.snapshot != null) {
+            this.snapshot.save();
+        }
+    }
+
+    /**
+     * Determines whether the value of the given field is currently known to be
+     * absent (see {@link Builder#cacheAbsent(long, TimeUnit)}).
+     * @param field The field to check.
+     * @return True if no keys matched the key-pattern of the field when it was
+     * last loaded, false otherwise.
+     */
+    public boolean isAbsent(Field field) {
+        return this.absent != null && this.absent.asMap().containsKey(field);
     }
 
     @Override
     public Option load(Field field) throws Exception {
-        return loadFromRedis(this.pool, field, field.getAnnotation(Redis.class));
+        return loadFromRedis(ImmutableList.of(field)).get(field);
+    }
+
+    /**
+     * Loads the values of all the given fields over a single connection. The
+     * commands needed to load the fields are sent to Redis in two pipelined
+     * batches, so that the number of round trips does not grow with the number
+     * of fields.
+     */
+    @Override
+    public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+        return loadFromRedis(fields);
     }
 
     /**
@@ -134,201 +650,1093 @@ public final class RedisLoader extends CacheLoader<Field, Option> {
         return value;
     }
 
-    private static Map<?, ?> nestedMapOf(Field field, Jedis jedis, Set<String> redisKeys) {
+    private static boolean isAggregate(Class<?> type) {
+        return Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Determines whether the given field is injected with the whole values of
+     * the keys that it matches, rather than with a slice (see {@link Slice})
+     * or a projected hash field (see {@link Redis#field()}). Only whole values
+     * are kept in the snapshot, or shared between fields (see
+     * {@link RedisPayloadCache}), as these hold one value per key-pattern.
+     */
+    private static boolean isWholeValue(Field field) {
+        return Slice.of(field).isWhole() && field.getAnnotation(Redis.class).field().isEmpty();
+    }
+
+    private static boolean isSliceable(RedisType redisType) {
+        return redisType == RedisType.LIST || redisType == RedisType.ZSET;
+    }
+
+    private static boolean isBinary(Class<?> type) {
+        return type.equals(byte[].class) || type.equals(Byte[].class);
+    }
+
+    /**
+     * Issues the read command that matches the given Redis data type for the
+     * given key on the given pipeline.
+     */
+    private static Response<?> fetch(Pipeline pipeline, String redisKey, RedisType redisType) {
+        Response<?> response = null;
+        switch (redisType) {
+            case STRING: {
+                response = pipeline.get(redisKey.getBytes(NumberParser.CHARSET));
+            } break;
+            case HASH: {
+                response = pipeline.hgetAll(redisKey);
+            } break;
+            case LIST: {
+                response = pipeline.lrange(redisKey, 0, -1);
+            } break;
+            case SET: {
+                response = pipeline.smembers(redisKey);
+            } break;
+            case ZSET: {
+                response = pipeline.zrange(redisKey, 0, -1);
+            } break;
+        }
+        return response;
+    }
+
+    /**
+     * Collects the commands that are needed to load the values of a number of
+     * fields, so that these can be sent to Redis in two pipelined batches. The
+     * first batch reads scalar values and determines the data type of every
+     * key that is to be injected into a map or collection, while the second
+     * batch issues the matching read command for each of these keys. Keys
+     * that are used by more than one field, or that have already been
+     * resolved (see {@link Batch#resolved}), are only read once. Fields that
+     * are injected with a slice of a list or sorted set (see {@link Slice})
+     * only read that slice, while projected hash fields (see
+     * {@link Redis#field()}) are read in the first batch with a single
+     * {@code HMGET} per hash. Every key is
+     * read from the connection that the route of the batch maps it to, with
+     * the keys of different connections being read in parallel. With
+     * consistent reads, the batches are sent as transactions (see
+     * {@link Builder#consistentReads()}).
+     */
+    private static final class Batch {
+
+        private final F<String, Jedis> route;
+        private final Executor executor;
+        private final int chunkSize;
+        private final boolean consistent;
+
+        private final Set<String> pendingValues = Sets.newHashSet();
+        private final Set<String> pendingTypes = Sets.newHashSet();
+        private final Set<String> pendingWhole = Sets.newHashSet();
+        private final SetMultimap<String, Slice> pendingSlices = HashMultimap.create();
+        private final SetMultimap<String, String> pendingFields = HashMultimap.create();
+
+        private final Map<String, byte[]> values = Maps.newHashMap();
+        private final Map<String, RedisType> types = Maps.newHashMap();
+        private final Map<String, Object> payloads = Maps.newHashMap();
+        private final Map<Slice, Map<String, Object>> sliced = Maps.newHashMap();
+        private final Map<String, Map<String, byte[]>> projections = Maps.newHashMap();
+
+        private long typeNanos;
+        private long payloadNanos;
+
+        Batch(F<String, Jedis> route, Executor executor, int chunkSize, boolean consistent) {
+            this.route = route;
+            this.executor = executor;
+            this.chunkSize = chunkSize;
+            this.consistent = consistent;
+        }
+
+        /**
+         * Records the data type and contents of a key that has already been
+         * read from Redis. The contents of a string value should be given as
+         * raw bytes.
+         */
+        void value(String redisKey, byte[] value) {
+            this.values.put(redisKey, value);
+        }
+
+        void resolved(String redisKey, RedisType redisType, Object payload) {
+            this.types.put(redisKey, redisType);
+            if (redisType == RedisType.STRING) {
+                this.values.put(redisKey, (byte[]) payload);
+            } else {
+                this.payloads.put(redisKey, payload);
+            }
+        }
+
+        void add(Field field, Set<String> redisKeys) {
+            String hashField = field.getAnnotation(Redis.class).field();
+            if (!hashField.isEmpty()) {
+                for (String redisKey : redisKeys) {
+                    addProjection(redisKey, hashField);
+                }
+            } else if (isAggregate(field.getType())) {
+                Slice slice = Slice.of(field);
+                for (String redisKey : redisKeys) {
+                    if (!this.types.containsKey(redisKey)) {
+                        this.pendingTypes.add(redisKey);
+                        if (slice.isWhole()) {
+                            this.pendingWhole.add(redisKey);
+                        }
+                    }
+                    if (!slice.isWhole()) {
+                        this.pendingSlices.put(redisKey, slice);
+                    }
+                }
+            } else if (redisKeys.size() == 1) {
+                String redisKey = Iterables.getOnlyElement(redisKeys);
+                if (!this.values.containsKey(redisKey)) {
+                    this.pendingValues.add(redisKey);
+                }
+            }
+        }
+
+        private void addProjection(String redisKey, String hashField) {
+            Map<String, byte[]> projection = this.projections.get(redisKey);
+            if (projection != null && projection.containsKey(hashField)) {
+                return;
+            }
+            Object payload = this.types.get(redisKey) == RedisType.HASH ? this.payloads.get(redisKey) : null;
+            if (payload instanceof Map) {
+                // Project from a hash that has already been resolved.
+                Object value = ((Map<?, ?>) payload).get(hashField);
+                projectionOf(redisKey).put(hashField,
+                    value != null ? value.toString().getBytes(NumberParser.CHARSET) : null);
+            } else {
+                this.pendingFields.put(redisKey, hashField);
+            }
+        }
+
+        private Map<String, byte[]> projectionOf(String redisKey) {
+            Map<String, byte[]> projection = this.projections.get(redisKey);
+            if (projection == null) {
+                projection = Maps.newHashMap();
+                this.projections.put(redisKey, projection);
+            }
+            return projection;
+        }
+
+        void load() {
+            Map<Jedis, Batch> parts = Maps.newLinkedHashMap();
+            for (String redisKey : this.pendingValues) {
+                partOf(parts, redisKey).pendingValues.add(redisKey);
+            }
+            for (String redisKey : this.pendingTypes) {
+                partOf(parts, redisKey).pendingTypes.add(redisKey);
+            }
+            for (String redisKey : this.pendingWhole) {
+                partOf(parts, redisKey).pendingWhole.add(redisKey);
+            }
+            for (Map.Entry<String, Slice> slice : this.pendingSlices.entries()) {
+                Batch part = partOf(parts, slice.getKey());
+                part.pendingSlices.put(slice.getKey(), slice.getValue());
+                // Keys that were resolved before loading keep their type.
+                RedisType redisType = this.types.get(slice.getKey());
+                if (redisType != null) {
+                    part.types.put(slice.getKey(), redisType);
+                }
+            }
+            for (Map.Entry<String, String> hashField : this.pendingFields.entries()) {
+                partOf(parts, hashField.getKey()).pendingFields.put(hashField.getKey(), hashField.getValue());
+            }
+            this.pendingValues.clear();
+            this.pendingTypes.clear();
+            this.pendingWhole.clear();
+            this.pendingSlices.clear();
+            this.pendingFields.clear();
+
+            List<Callable<Batch>> loads = Lists.newArrayList();
+            for (final Map.Entry<Jedis, Batch> part : parts.entrySet()) {
+                loads.add(new Callable<Batch>() {
+
+                    @Override
+                    public Batch call() {
+                        part.getValue().load(part.getKey());
+                        return part.getValue();
+                    }
+                });
+            }
+            for (Batch part : inParallel(this.executor, loads)) {
+                this.values.putAll(part.values);
+                this.types.putAll(part.types);
+                this.payloads.putAll(part.payloads);
+                for (Map.Entry<Slice, Map<String, Object>> slice : part.sliced.entrySet()) {
+                    slicedOf(slice.getKey()).putAll(slice.getValue());
+                }
+                for (Map.Entry<String, Map<String, byte[]>> projection : part.projections.entrySet()) {
+                    projectionOf(projection.getKey()).putAll(projection.getValue());
+                }
+                this.typeNanos = Math.max(this.typeNanos, part.typeNanos);
+                this.payloadNanos = Math.max(this.payloadNanos, part.payloadNanos);
+            }
+        }
+
+        private Batch partOf(Map<Jedis, Batch> parts, String redisKey) {
+            Jedis jedis = this.route.f(redisKey);
+            Batch part = parts.get(jedis);
+            if (part == null) {
+                part = new Batch(this.route, null, this.chunkSize, this.consistent);
+                parts.put(jedis, part);
+            }
+            return part;
+        }
+
+        private Map<String, Object> slicedOf(Slice slice) {
+            Map<String, Object> payloads = this.sliced.get(slice);
+            if (payloads == null) {
+                payloads = Maps.newHashMap();
+                this.sliced.put(slice, payloads);
+            }
+            return payloads;
+        }
+
+        private void load(Jedis jedis) {
+            int attempts = 0;
+            while (!tryLoad(jedis)) {
+                if (++attempts == MAX_ATTEMPTS) {
+                    throw new IllegalStateException(String.format(
+                        "Could not read a consistent view of the keys after %d attempts.", attempts));
+                }
+            }
+            this.pendingValues.clear();
+            this.pendingTypes.clear();
+            this.pendingWhole.clear();
+            this.pendingSlices.clear();
+            this.pendingFields.clear();
+        }
+
+        /**
+         * Reads the pending keys in two pipelined batches. With consistent
+         * reads, the keys are watched by the first batch and the second batch
+         * is sent as a transaction, and false is returned if it was aborted
+         * because keys were changed in between (see
+         * {@link Builder#consistentReads()}). Once the data types of the keys
+         * are known (from such an aborted attempt), all keys are read in a
+         * single transaction instead, which only needs to be repeated if a
+         * key has changed its data type.
+         */
+        private boolean tryLoad(Jedis jedis) {
+            long start = System.nanoTime();
+            Map<String, RedisType> assumed = this.consistent ? assumedTypes() : null;
+            boolean watched = this.consistent && assumed == null;
+            Pipeline pipeline = jedis.pipelined();
+            if (watched) {
+                pipeline.watch(watchedKeys());
+            } else if (this.consistent) {
+                pipeline.multi();
+            }
+            Map<String, Response<byte[]>> values = Maps.newHashMap();
+            for (String redisKey : this.pendingValues) {
+                values.put(redisKey, pipeline.get(redisKey.getBytes(NumberParser.CHARSET)));
+            }
+            Map<String, Response<String>> types = Maps.newHashMap();
+            for (String redisKey : this.pendingTypes) {
+                types.put(redisKey, pipeline.type(redisKey));
+            }
+            // All the projected fields of a hash are read with one HMGET.
+            Map<String, List<String>> hashFields = Maps.newHashMap();
+            Map<String, Response<List<byte[]>>> projected = Maps.newHashMap();
+            for (String redisKey : this.pendingFields.keySet()) {
+                List<String> fields = ImmutableList.copyOf(this.pendingFields.get(redisKey));
+                byte[][] encoded = new byte[fields.size()][];
+                for (int i = 0; i < encoded.length; ++i) {
+                    encoded[i] = fields.get(i).getBytes(NumberParser.CHARSET);
+                }
+                hashFields.put(redisKey, fields);
+                projected.put(redisKey, pipeline.hmget(redisKey.getBytes(NumberParser.CHARSET), encoded));
+            }
+            Map<String, Response<?>> payloads = Maps.newHashMap();
+            Map<String, Response<? extends Collection<String>>> windows = Maps.newHashMap();
+            List<String> scanned = Lists.newArrayList();
+            Map<Slice, Map<String, Response<?>>> slices = Maps.newHashMap();
+            if (assumed != null) {
+                fetchAll(pipeline, assumed, payloads, windows, scanned, slices);
+                pipeline.exec();
+            }
+            pipeline.sync();
+            Map<String, RedisType> actual = Maps.newHashMap();
+            for (Map.Entry<String, Response<String>> type : types.entrySet()) {
+                actual.put(type.getKey(), RedisType.of(type.getValue().get()));
+            }
+            if (assumed != null && !assumed.equals(actual)) {
+                // A key has changed its data type, so it was read with the
+                // wrong command.
+                this.types.putAll(actual);
+                return false;
+            }
+            for (Map.Entry<String, Response<List<byte[]>>> projection : projected.entrySet()) {
+                List<String> fields = hashFields.get(projection.getKey());
+                List<byte[]> replies = projection.getValue().get();
+                Map<String, byte[]> projectedValues = projectionOf(projection.getKey());
+                for (int i = 0; i < fields.size(); ++i) {
+                    projectedValues.put(fields.get(i), replies.get(i));
+                }
+            }
+            long typed = System.nanoTime();
+            this.typeNanos = typed - start;
+
+            for (Map.Entry<String, Response<byte[]>> value : values.entrySet()) {
+                this.values.put(value.getKey(), value.getValue().get());
+            }
+            this.types.putAll(actual);
+            if (assumed == null) {
+                pipeline = jedis.pipelined();
+                if (watched) {
+                    pipeline.multi();
+                }
+                fetchAll(pipeline, actual, payloads, windows, scanned, slices);
+                Response<List<Object>> transaction = watched ? pipeline.exec() : null;
+                pipeline.sync();
+                if (transaction != null && transaction.get() == null) {
+                    // A watched key was changed, so the values read so far
+                    // may not belong together.
+                    return false;
+                }
+            }
+            for (Map.Entry<Slice, Map<String, Response<?>>> slice : slices.entrySet()) {
+                Map<String, Object> slicedPayloads = slicedOf(slice.getKey());
+                for (Map.Entry<String, Response<?>> response : slice.getValue().entrySet()) {
+                    slicedPayloads.put(response.getKey(), slice.getKey().payloadOf(response.getValue().get()));
+                }
+            }
+            if (!windows.isEmpty()) {
+                loadWindows(jedis, windows);
+            }
+            for (String redisKey : scanned) {
+                loadScanned(jedis, redisKey);
+            }
+
+            for (Map.Entry<String, Response<?>> payload : payloads.entrySet()) {
+                if (this.types.get(payload.getKey()) == RedisType.STRING) {
+                    this.values.put(payload.getKey(), (byte[]) payload.getValue().get());
+                } else {
+                    this.payloads.put(payload.getKey(), payload.getValue().get());
+                }
+            }
+            this.payloadNanos = System.nanoTime() - typed;
+            return true;
+        }
+
+        /**
+         * Issues the read commands for the contents of the keys with the given
+         * data types, and for the pending slices.
+         */
+        private void fetchAll(Pipeline pipeline, Map<String, RedisType> keyTypes, Map<String, Response<?>> payloads,
+                Map<String, Response<? extends Collection<String>>> windows, List<String> scanned,
+                Map<Slice, Map<String, Response<?>>> slices) {
+            for (Map.Entry<String, RedisType> type : keyTypes.entrySet()) {
+                RedisType redisType = type.getValue();
+                // Keys that are only read in slices are not read whole, unless
+                // they are not lists or sorted sets (which can not be sliced).
+                if (redisType == RedisType.NONE || (!this.pendingWhole.contains(type.getKey()) && isSliceable(redisType))) {
+                    continue;
+                }
+                if (this.chunkSize > 0 && (redisType == RedisType.LIST || redisType == RedisType.ZSET)) {
+                    windows.put(type.getKey(), window(pipeline, type.getKey(), redisType, 0));
+                } else if (this.chunkSize > 0 && (redisType == RedisType.HASH || redisType == RedisType.SET)) {
+                    scanned.add(type.getKey());
+                } else {
+                    payloads.put(type.getKey(), fetch(pipeline, type.getKey(), redisType));
+                }
+            }
+            for (Map.Entry<String, Slice> slice : this.pendingSlices.entries()) {
+                RedisType redisType = keyTypes.containsKey(slice.getKey()) ?
+                    keyTypes.get(slice.getKey()) : this.types.get(slice.getKey());
+                if (isSliceable(redisType)) {
+                    Map<String, Response<?>> responses = slices.get(slice.getValue());
+                    if (responses == null) {
+                        responses = Maps.newHashMap();
+                        slices.put(slice.getValue(), responses);
+                    }
+                    responses.put(slice.getKey(), slice.getValue().fetch(pipeline, slice.getKey(), redisType));
+                }
+            }
+        }
+
+        /**
+         * Returns the data types that the pending keys had when they were
+         * last read, or {@code null} if not all of them have been read yet.
+         */
+        private Map<String, RedisType> assumedTypes() {
+            Map<String, RedisType> assumed = Maps.newHashMap();
+            for (String redisKey : this.pendingTypes) {
+                RedisType redisType = this.types.get(redisKey);
+                if (redisType == null) {
+                    return null;
+                }
+                assumed.put(redisKey, redisType);
+            }
+            return assumed;
+        }
+
+        private String[] watchedKeys() {
+            Set<String> keys = Sets.newHashSet(this.pendingValues);
+            keys.addAll(this.pendingTypes);
+            keys.addAll(this.pendingSlices.keySet());
+            keys.addAll(this.pendingFields.keySet());
+            return keys.toArray(new String[keys.size()]);
+        }
+
+        /**
+         * Issues the {@code LRANGE} (or {@code ZRANGE}) command for the window
+         * of elements that starts at the given offset.
+         */
+        private Response<? extends Collection<String>> window(
+                Pipeline pipeline, String redisKey, RedisType redisType, long offset) {
+            long end = offset + this.chunkSize - 1;
+            return redisType == RedisType.LIST ?
+                pipeline.lrange(redisKey, offset, end) :
+                pipeline.zrange(redisKey, offset, end);
+        }
+
+        /**
+         * Reads lists and sorted sets in windows of {@code chunkSize}
+         * elements, with the next window of every key that is not yet
+         * complete being requested in a single pipelined batch. The elements
+         * of each window are added to the payload as soon as it arrives.
+         */
+        private void loadWindows(Jedis jedis, Map<String, Response<? extends Collection<String>>> windows) {
+            Map<String, Collection<String>> loaded = Maps.newHashMap();
+            for (String redisKey : windows.keySet()) {
+                Collection<String> payload = this.types.get(redisKey) == RedisType.LIST ?
+                    Lists.<String>newArrayList() : Sets.<String>newLinkedHashSet();
+                loaded.put(redisKey, payload);
+                this.payloads.put(redisKey, payload);
+            }
+            while (!windows.isEmpty()) {
+                Map<String, Response<? extends Collection<String>>> next = Maps.newHashMap();
+                Pipeline pipeline = jedis.pipelined();
+                for (Map.Entry<String, Response<? extends Collection<String>>> window : windows.entrySet()) {
+                    Collection<String> chunk = window.getValue().get();
+                    Collection<String> payload = loaded.get(window.getKey());
+                    payload.addAll(chunk);
+                    if (chunk.size() == this.chunkSize) {
+                        next.put(window.getKey(),
+                            window(pipeline, window.getKey(), this.types.get(window.getKey()), payload.size()));
+                    }
+                }
+                pipeline.sync();
+                windows = next;
+            }
+        }
+
+        /**
+         * Reads a hash (or set) with {@code HSCAN} (or {@code SSCAN}), adding
+         * the elements of every chunk to the payload as it arrives.
+         */
+        private void loadScanned(Jedis jedis, String redisKey) {
+            if (this.types.get(redisKey) == RedisType.HASH) {
+                Map<String, String> payload = Maps.newHashMap();
+                for (Map.Entry<String, String> entry : hscan(jedis, redisKey, this.chunkSize)) {
+                    payload.put(entry.getKey(), entry.getValue());
+                }
+                this.payloads.put(redisKey, payload);
+            } else {
+                Set<String> payload = Sets.newHashSet();
+                for (String member : sscan(jedis, redisKey, this.chunkSize)) {
+                    payload.add(member);
+                }
+                this.payloads.put(redisKey, payload);
+            }
+        }
+
+        String string(String redisKey) {
+            byte[] value = this.values.get(redisKey);
+            return value != null ? new String(value, NumberParser.CHARSET) : null;
+        }
+
+        byte[] binary(String redisKey) {
+            return this.values.get(redisKey);
+        }
+
+        /**
+         * Returns the raw value of the given field of the hash that is stored
+         * at the given key, or {@code null} if it does not exist.
+         */
+        byte[] projection(String redisKey, String hashField) {
+            Map<String, byte[]> projection = this.projections.get(redisKey);
+            return projection != null ? projection.get(hashField) : null;
+        }
+
+        RedisType type(String redisKey) {
+            return this.types.get(redisKey);
+        }
+
+        /**
+         * Returns the contents of the given key, with string values being
+         * decoded only when they are asked for.
+         */
+        Object payload(String redisKey) {
+            if (this.types.get(redisKey) == RedisType.STRING) {
+                return string(redisKey);
+            }
+            return this.payloads.get(redisKey);
+        }
+
+        /**
+         * Returns the given slice of the contents of the given key. Keys that
+         * are not lists or sorted sets are not sliced.
+         */
+        Object payload(String redisKey, Slice slice) {
+            if (!slice.isWhole() && isSliceable(this.types.get(redisKey))) {
+                Map<String, Object> payloads = this.sliced.get(slice);
+                if (payloads != null && payloads.containsKey(redisKey)) {
+                    return payloads.get(redisKey);
+                }
+            }
+            return payload(redisKey);
+        }
+    }
+
+    private static Map<?, ?> nestedMapOf(Field field, Slice slice, Batch batch, Set<String> redisKeys) {
         Map map = mapImplementationOf(field.getType());
         for (String redisKey : redisKeys) {
-            JedisType jedisType = JedisType.valueOf(jedis.type(redisKey).toUpperCase());
-            switch (jedisType) {
-                case STRING: {
-                    map.put(redisKey, jedis.get(redisKey));
-                } break;
-                case HASH: {
-                    map.put(redisKey, jedis.hgetAll(redisKey));
-                } break;
-                case LIST: {
-                    map.put(redisKey, jedis.lrange(redisKey, 0, -1));
-                } break;
-                case SET: {
-                    map.put(redisKey, jedis.smembers(redisKey));
-                } break;
-                case ZSET : {
-                    map.put(redisKey, jedis.zrange(redisKey, 0, -1));
-                } break;
+            if (batch.type(redisKey) != RedisType.NONE) {
+                map.put(redisKey, batch.payload(redisKey, slice));
             }
         }
         return map;
     }
 
-    private static Collection<?> nestedCollectionOf(Field field, Jedis jedis, Set<String> redisKeys) {
+    private static Collection<?> nestedCollectionOf(Field field, Slice slice, Batch batch, Set<String> redisKeys) {
         Collection collection = collectionImplementationOf(field.getType());
         for (String redisKey : redisKeys) {
-            JedisType jedisType = JedisType.valueOf(jedis.type(redisKey).toUpperCase());
-            switch (jedisType) {
-                case STRING: {
-                    collection.add(jedis.get(redisKey));
-                } break;
-                case HASH: {
-                    collection.add(jedis.hgetAll(redisKey));
-                } break;
-                case LIST: {
-                    collection.add(jedis.lrange(redisKey, 0, -1));
-                } break;
-                case SET: {
-                    collection.add(jedis.smembers(redisKey));
-                } break;
-                case ZSET: {
-                    collection.add(jedis.zrange(redisKey, 0, -1));
-                } break;
+            if (batch.type(redisKey) != RedisType.NONE) {
+                collection.add(batch.payload(redisKey, slice));
             }
         }
         return collection;
     }
     
-    private static Map<?, ?> mapOf(Field field, Jedis jedis, String key) {
+    private static Map<?, ?> mapOf(Field field, String key, RedisType redisType, Object payload) {
         Map map = mapImplementationOf(field.getType());
-        JedisType jedisType = JedisType.valueOf(jedis.type(key).toUpperCase());
-        switch (jedisType) {
-            case STRING: {
-                map.put(key, jedis.get(key));
-            } break;
-            case HASH: {
-                Option<Type> valueType = genericTypeOf(field, 1);
-                if (valueType.exists(isAssignableTo(Map.class)) || valueType.exists(isEqualTo(Object.class))) {
-                    map.put(key, jedis.hgetAll(key));
-                } else {
-                    map.putAll(jedis.hgetAll(key));
-                }
-            } break;
-            case LIST: {
-                map.put(key, jedis.lrange(key, 0, -1));
-            } break;
-            case SET: {
-                map.put(key, jedis.smembers(key));
-            } break;
-            case ZSET: {
-                map.put(key, jedis.zrange(key, 0, -1));
-            } break;
+        Option<Type> valueType = genericTypeOf(field, 1);
+        if (redisType == RedisType.HASH
+            && !valueType.exists(isAssignableTo(Map.class)) && !valueType.exists(isEqualTo(Object.class))) {
+            map.putAll((Map) payload);
+        } else if (redisType == RedisType.ZSET && payload instanceof Map) {
+            // The members of a sorted set that was read with its scores.
+            map.putAll((Map) payload);
+        } else {
+            map.put(key, payload);
         }
         return map;
     }
 
-    private static Collection<?> collectionOf(Field field, Jedis jedis, String key) {
+    private static Collection<?> collectionOf(Field field, RedisType redisType, Object payload) {
         Collection collection = collectionImplementationOf(field.getType());
-        JedisType jedisType = JedisType.valueOf(jedis.type(key).toUpperCase());
         Option<Type> genericType = genericTypeOf(field, 0);
-        switch (jedisType) {
-            case STRING: {
-                collection.add(jedis.get(key));
-            } break;
-            case HASH: {
-                collection.add(jedis.hgetAll(key));
-            } break;
-            case LIST: {
-                if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.lrange(key, 0, -1));
-                } else {
-                    collection.addAll(jedis.lrange(key, 0, -1));
+        if ((redisType == RedisType.LIST || redisType == RedisType.SET || redisType == RedisType.ZSET)
+            && !genericType.exists(isAssignableTo(Collection.class)) && !genericType.exists(isEqualTo(Object.class))) {
+            collection.addAll((Collection) payload);
+        } else {
+            collection.add(payload);
+        }
+        return collection;
+    }
+
+    /**
+     * Converts the given raw value that was stored at the given key to an
+     * instance of the given (non-aggregate) field type. Numbers are parsed
+     * directly from the raw bytes (see {@link NumberParser}), while the other
+     * types are converted from the decoded string.
+     */
+    private static Object scalarOf(Class<?> fieldType, String redisKey, byte[] bytes) {
+        Object value = null;
+        if (isBinary(fieldType)) {
+            return fieldType.equals(byte[].class) ? bytes : ArrayUtils.toObject(bytes);
+        }
+        if (isNumeric(fieldType)) {
+            try {
+                if (fieldType.equals(byte.class) || fieldType.equals(Byte.class)) {
+                    value = NumberParser.parseByte(bytes);
+                } else if (fieldType.equals(short.class) || fieldType.equals(Short.class)) {
+                    value = NumberParser.parseShort(bytes);
+                } else if (fieldType.equals(int.class) || fieldType.equals(Integer.class)) {
+                    value = NumberParser.parseInt(bytes);
+                } else if (fieldType.equals(long.class) || fieldType.equals(Long.class)) {
+                    value = NumberParser.parseLong(bytes);
+                } else if (fieldType.equals(BigInteger.class)) {
+                    value = NumberParser.parseBigInteger(bytes);
+                } else if (fieldType.equals(float.class) || fieldType.equals(Float.class)) {
+                    value = NumberParser.parseFloat(bytes);
+                } else if (fieldType.equals(double.class) || fieldType.equals(Double.class)) {
+                    value = NumberParser.parseDouble(bytes);
+                } else if (fieldType.equals(BigDecimal.class)) {
+                    value = NumberParser.parseBigDecimal(bytes);
                 }
-            } break;
-            case SET: {
-                if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.smembers(key));
+            } catch (NumberFormatException exception) {
+                throw ConversionException.of(exception, new String(bytes, NumberParser.CHARSET), redisKey, fieldType);
+            }
+            return value;
+        }
+        String toConvert = new String(bytes, NumberParser.CHARSET);
+        if (fieldType.equals(char[].class)) {
+            value = toConvert.toCharArray();
+        } else if (fieldType.equals(Character[].class)) {
+            value = ArrayUtils.toObject(toConvert.toCharArray());
+        } else if (fieldType.equals(char.class) || fieldType.equals(Character.class)) {
+            if (toConvert.length() == 1) {
+                value = toConvert.charAt(0);
+            } else {
+                throw ConversionException.of(toConvert, redisKey, fieldType);
+            }
+        } else if (fieldType.equals(String.class)) {
+            value = toConvert;
+        } else if (fieldType.equals(boolean.class) || fieldType.equals(Boolean.class)) {
+            if (BOOLEAN.matcher(toConvert).matches()) {
+                value = TRUE.matcher(toConvert).matches();
+            } else {
+                throw ConversionException.of(toConvert, redisKey, fieldType);
+            }
+        }
+        return value;
+    }
+
+    private static boolean isNumeric(Class<?> type) {
+        return Number.class.isAssignableFrom(type) || (type.isPrimitive()
+            && !type.equals(boolean.class) && !type.equals(char.class) && !type.equals(void.class));
+    }
+
+    /**
+     * Converts the values that were loaded for the given keys to an instance
+     * of the type of the given field.
+     */
+    private static Option valueOf(Field field, Batch batch, Set<String> redisKeys) {
+        Object value = null;
+
+        Class<?> fieldType = field.getType();
+        Redis annotation = field.getAnnotation(Redis.class);
+
+        if (!isFound(field, batch, redisKeys)) {
+            return absentValueOf(field);
+        } else if (!annotation.field().isEmpty()) {
+            value = projectedValueOf(field, annotation.field(), batch, redisKeys);
+        } else if (redisKeys.size() == 1) {
+            String redisKey = Iterables.getOnlyElement(redisKeys);
+            if (isAggregate(fieldType)) {
+                RedisType redisType = batch.type(redisKey);
+                if (Map.class.isAssignableFrom(fieldType)) {
+                    value = mapOf(field, redisKey, redisType, batch.payload(redisKey, Slice.of(field)));
                 } else {
-                    collection.addAll(jedis.smembers(key));
+                    value = collectionOf(field, redisType, batch.payload(redisKey, Slice.of(field)));
                 }
-            } break;
-            case ZSET: {
-                if (genericType.exists(isAssignableTo(Collection.class)) || genericType.exists(isEqualTo(Object.class))) {
-                    collection.add(jedis.zrange(key, 0, -1));
-                } else {
-                    collection.addAll(jedis.zrange(key, 0, -1));
+            } else {
+                value = scalarOf(fieldType, redisKey, batch.binary(redisKey));
+            }
+        } else {
+            if (Map.class.isAssignableFrom(fieldType)) {
+                value = nestedMapOf(field, Slice.of(field), batch, redisKeys);
+            } else if (Collection.class.isAssignableFrom(fieldType)) {
+                value = nestedCollectionOf(field, Slice.of(field), batch, redisKeys);
+            }
+        }
+        return Option.fromNull(value);
+    }
+
+    /**
+     * Returns the value of the given field when no keys matched its
+     * key-pattern. The non-null default is created anew on every call, so that
+     * a mutable default is never shared between instances.
+     */
+    private static Option absentValueOf(Field field) {
+        boolean allowNull = field.getAnnotation(Redis.class).allowNull();
+        return Option.fromNull(allowNull ? null : nonNullValueOf(field.getType()));
+    }
+
+    /**
+     * Returns a batch in which the given raw values have been resolved (see
+     * {@link #rawValuesOf}), so that they can be converted again.
+     */
+    private static Batch batchOf(SortedMap<String, P2<RedisType, Object>> values) {
+        Batch batch = new Batch(null, null, 0, false);
+        for (Map.Entry<String, P2<RedisType, Object>> entry : values.entrySet()) {
+            batch.resolved(entry.getKey(), entry.getValue()._1(), entry.getValue()._2());
+        }
+        return batch;
+    }
+
+    /**
+     * Collects the raw values of the given keys from the loaded batch, in the
+     * form in which they are kept in a {@link RedisSnapshot}. Keys that are
+     * absent are left out.
+     */
+    private static SortedMap<String, P2<RedisType, Object>> rawValuesOf(Batch batch, Set<String> redisKeys) {
+        SortedMap<String, P2<RedisType, Object>> values = Maps.newTreeMap();
+        for (String redisKey : redisKeys) {
+            RedisType redisType = batch.type(redisKey);
+            byte[] bytes = batch.binary(redisKey);
+            if (redisType == null || redisType == RedisType.STRING) {
+                if (bytes != null) {
+                    values.put(redisKey, P.p(RedisType.STRING, (Object) bytes));
                 }
-            } break;
+            } else if (redisType != RedisType.NONE) {
+                values.put(redisKey, P.p(redisType, batch.payload(redisKey)));
+            }
         }
-        return collection;
+        return values;
+    }
+
+    /**
+     * Loads the values of the given fields from the given Redis databases.
+     * Every key is read from the database that the given route maps it to,
+     * while the keys that match a key-pattern are discovered on all of the
+     * given databases.
+     */
+    private Loaded loadFrom(List<Field> toLoad, Collection<Jedis> nodes, F<String, Jedis> route) {
+        Loaded loaded = new Loaded(new Batch(route, this.executor, this.chunkSize, this.consistent));
+        for (Field field : toLoad) {
+            long start = System.nanoTime();
+            loaded.redisKeys.put(field, keysOf(nodes, loaded.batch, field));
+            loaded.discoveryNanos.put(field, System.nanoTime() - start);
+        }
+        for (Map.Entry<Field, Set<String>> entry : loaded.redisKeys.entrySet()) {
+            loaded.batch.add(entry.getKey(), entry.getValue());
+        }
+        loaded.batch.load();
+        return loaded;
+    }
+
+    /**
+     * The keys that were discovered for a number of fields, together with
+     * the batch in which their values were read. Only reading from Redis
+     * happens on the connection (which, with hedging, may happen more than
+     * once at the same time), while the values are converted and recorded
+     * once, from the batch that was read first.
+     */
+    private static final class Loaded {
+
+        private final Batch batch;
+        private final Map<Field, Set<String>> redisKeys = Maps.newLinkedHashMap();
+        private final Map<Field, Long> discoveryNanos = Maps.newHashMap();
+
+        Loaded(Batch batch) {
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Converts the values that were loaded for the keys of every given field,
+     * and records them (see {@link Builder#recordStats(FieldMetrics)},
+     * {@link Builder#cacheAbsent(long, TimeUnit)} and
+     * {@link Builder#snapshot(File)}).
+     */
+    private Map<Field, Option> valuesOf(Map<Field, Set<String>> redisKeys, Batch batch, Map<Field, Long> discoveryNanos,
+            long generation) {
+        Map<Field, Option> loaded = Maps.newHashMap();
+        Map<Object, RedisPayloadCache.Payload> payloads = Maps.newHashMap();
+        for (Map.Entry<Field, Set<String>> entry : redisKeys.entrySet()) {
+            Field field = entry.getKey();
+            long start = System.nanoTime();
+            Option value = null;
+            RedisPayloadCache.Payload payload = null;
+            if (this.shared != null && isWholeValue(field)) {
+                Object key = this.shared.keyOf(field);
+                payload = payloads.get(key);
+                if (payload == null) {
+                    payload = this.shared.put(field, generation, rawValuesOf(batch, entry.getValue()));
+                    payloads.put(key, payload);
+                }
+                value = payload.conversionOf(field);
+            }
+            if (value == null) {
+                value = valueOf(field, batch, entry.getValue());
+                if (payload != null && isFound(field, batch, entry.getValue())) {
+                    value = payload.converted(field, value);
+                }
+            }
+            if (this.metrics != null) {
+                this.metrics.statsOf(field).loaded(discoveryNanos.get(field),
+                    batch.typeNanos, batch.payloadNanos, System.nanoTime() - start);
+            }
+            loaded.put(field, value);
+            record(field, batch, entry.getValue(), payload != null ? payload.values() : null);
+        }
+        return loaded;
     }
 
-    private static Option loadFromRedis(JedisPool pool, final Field field, final Redis annotation) {
-        return using(pool)._do(new F<Jedis, Option>() {
+    /**
+     * Records that the given field is absent if no value for it was found in
+     * the given batch, and keeps its raw values in the snapshot (see
+     * {@link Builder#cacheAbsent(long, TimeUnit)} and
+     * {@link Builder#snapshot(File)}).
+     * @param rawValues The raw values of the given keys, or {@code null} to
+     * read them from the batch.
+     */
+    private void record(Field field, Batch batch, Set<String> redisKeys,
+            SortedMap<String, P2<RedisType, Object>> rawValues) {
+        if (this.absent != null && !isFound(field, batch, redisKeys)) {
+            this.absent.put(field, Boolean.TRUE);
+        }
+        if (this.snapshot != null && isWholeValue(field)) {
+            this.snapshot.record(field, rawValues != null ? rawValues : rawValuesOf(batch, redisKeys));
+        }
+    }
+
+    /**
+     * Loads the fields that read a single literal key through the
+     * {@link GetDispatcher}, so that they are read together with the keys of
+     * concurrent loads. These fields are removed from the given list.
+     */
+    private Map<Field, Option> dispatch(List<Field> toLoad, long generation) {
+        Map<Field, Set<String>> redisKeys = Maps.newLinkedHashMap();
+        Map<Field, Long> discoveryNanos = Maps.newHashMap();
+        Set<String> keys = Sets.newHashSet();
+        for (Iterator<Field> fields = toLoad.iterator(); fields.hasNext();) {
+            Field field = fields.next();
+            KeyPattern pattern = this.patterns.of(field);
+            if (pattern.isLiteral() && !isAggregate(field.getType()) && field.getAnnotation(Redis.class).field().isEmpty()) {
+                redisKeys.put(field, ImmutableSortedSet.of(pattern.pattern()));
+                discoveryNanos.put(field, 0L);
+                keys.add(pattern.pattern());
+                fields.remove();
+            }
+        }
+        if (redisKeys.isEmpty()) {
+            return ImmutableMap.of();
+        }
+        Batch batch = new Batch(null, null, 0, false);
+        long start = System.nanoTime();
+        for (Map.Entry<String, byte[]> value : this.dispatcher.get(keys).entrySet()) {
+            batch.value(value.getKey(), value.getValue());
+        }
+        batch.payloadNanos = System.nanoTime() - start;
+        return valuesOf(redisKeys, batch, discoveryNanos, generation);
+    }
+
+    private List<byte[]> mget(List<String> keys) {
+        final byte[][] encoded = new byte[keys.size()][];
+        for (int i = 0; i < encoded.length; ++i) {
+            encoded[i] = keys.get(i).getBytes(NumberParser.CHARSET);
+        }
+        F<Jedis, List<byte[]>> mget = new F<Jedis, List<byte[]>>() {
 
             @Override
-            public Option f(Jedis jedis) {
-                Object value = null;
-                
-                Class<?> fieldType = field.getType();
-
-                String pattern = annotation.value();
-                boolean allowNull = annotation.allowNull();
-
-                Set<String> redisKeys = Sets.newTreeSet(jedis.keys(pattern));
-                if (redisKeys.size() == 1) {
-                    String redisKey = Iterables.getOnlyElement(redisKeys);
-                    if (fieldType.equals(char[].class)) {
-                        value = jedis.get(redisKey).toCharArray();
-                    } else if (fieldType.equals(Character[].class)) {
-                        value = ArrayUtils.toObject(jedis.get(redisKey).toCharArray());
-                    } else if (fieldType.equals(char.class) || fieldType.equals(Character.class)) {
-                        String toConvert = jedis.get(redisKey);
-                        if (toConvert.length() == 1) {
-                            value = jedis.get(redisKey).charAt(0);
-                        } else {
-                            throw ConversionException.of(toConvert, redisKey, fieldType);
-                        }
-                    } else if (fieldType.equals(String.class)) {
-                        value = jedis.get(redisKey);
-                    } else if (fieldType.equals(byte[].class)) {
-                        value = jedis.get(redisKey.getBytes());
-                    } else if (fieldType.equals(Byte[].class)) {
-                        value = ArrayUtils.toObject(jedis.get(redisKey.getBytes()));
-                    } else if (fieldType.equals(boolean.class) || fieldType.equals(Boolean.class)) {
-                        String toConvert = jedis.get(redisKey);
-                        if (BOOLEAN.matcher(toConvert).matches()) {
-                            value = TRUE.matcher(toConvert).matches();
-                        } else {
-                            throw ConversionException.of(toConvert, redisKey, fieldType);
-                        }
-                    } else if (Map.class.isAssignableFrom(fieldType)) {
-                        value = mapOf(field, jedis, redisKey);
-                    } else if (Collection.class.isAssignableFrom(fieldType)) {
-                        value = collectionOf(field, jedis, redisKey);
-                    } else {
-                        String toConvert = jedis.get(redisKey);
-                        try {
-                            if (fieldType.equals(byte.class) || fieldType.equals(Byte.class)) {
-                                value = Byte.parseByte(jedis.get(redisKey));
-                            } else if (fieldType.equals(short.class) || fieldType.equals(Short.class)) {
-                                value = Short.parseShort(toConvert);
-                            } else if (fieldType.equals(int.class) || fieldType.equals(Integer.class)) {
-                                value = Integer.parseInt(toConvert);
-                            } else if (fieldType.equals(long.class) || fieldType.equals(Long.class)) {
-                                value = Long.parseLong(toConvert);
-                            } else if (fieldType.equals(BigInteger.class)) {
-                                value = new BigInteger(toConvert);
-                            } else if (fieldType.equals(float.class) || fieldType.equals(Float.class)) {
-                                value = Float.parseFloat(toConvert);
-                            } else if (fieldType.equals(double.class) || fieldType.equals(Double.class)) {
-                                value = Double.parseDouble(toConvert);
-                            } else if (fieldType.equals(BigDecimal.class)) {
-                                value = new BigDecimal(toConvert);
-                            }
-                        } catch (NumberFormatException exception) {
-                            throw ConversionException.of(exception, toConvert, redisKey, fieldType);
-                        }
+            public List<byte[]> f(Jedis jedis) {
+                return jedis.mget(encoded);
+            }
+        };
+        return this.router != null ? this.router.read(mget) : using(this.pool)._do(mget);
+    }
+
+    /**
+     * Runs the given tasks on the given executor and waits for all of them to
+     * complete. The tasks are run on the calling thread if there is only one
+     * of them, or if no executor is given.
+     */
+    private static <T> List<T> inParallel(Executor executor, List<Callable<T>> tasks) {
+        List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+        try {
+            if (executor == null || tasks.size() == 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                List<FutureTask<T>> futures = Lists.newArrayListWithCapacity(tasks.size());
+                for (Callable<T> task : tasks) {
+                    FutureTask<T> future = new FutureTask<T>(task);
+                    executor.execute(future);
+                    futures.add(future);
+                }
+                for (FutureTask<T> future : futures) {
+                    try {
+                        results.add(future.get());
+                    } catch (ExecutionException e) {
+                        throw Throwables.propagate(e.getCause());
                     }
-                } else if (redisKeys.size() > 1) {
-                    if (Map.class.isAssignableFrom(fieldType)) {
-                        value = nestedMapOf(field, jedis, redisKeys);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+        return results;
+    }
+
+    /**
+     * Converts the values of the given field of the hashes that are stored at
+     * the given keys to an instance of the type of the given field. A map
+     * holds the value of every hash that has the field by its key.
+     */
+    private static Object projectedValueOf(Field field, String hashField, Batch batch, Set<String> redisKeys) {
+        Class<?> fieldType = field.getType();
+        if (!isAggregate(fieldType)) {
+            String redisKey = Iterables.getOnlyElement(redisKeys);
+            return scalarOf(fieldType, redisKey, batch.projection(redisKey, hashField));
+        }
+        Map map = Map.class.isAssignableFrom(fieldType) ? mapImplementationOf(fieldType) : null;
+        Collection collection = map == null ? collectionImplementationOf(fieldType) : null;
+        for (String redisKey : redisKeys) {
+            byte[] bytes = batch.projection(redisKey, hashField);
+            if (bytes != null) {
+                String projected = new String(bytes, NumberParser.CHARSET);
+                if (map != null) {
+                    map.put(redisKey, projected);
+                } else {
+                    collection.add(projected);
+                }
+            }
+        }
+        return map != null ? map : collection;
+    }
+
+    /**
+     * Determines whether a value for a field of the given type is present in
+     * the loaded batch. A key-pattern that matches more than one key always
+     * counts as present.
+     */
+    private static boolean isFound(Field field, Batch batch, Set<String> redisKeys) {
+        Class<?> fieldType = field.getType();
+        String hashField = field.getAnnotation(Redis.class).field();
+        if (!hashField.isEmpty()) {
+            if (!isAggregate(fieldType)) {
+                return redisKeys.size() == 1 && batch.projection(Iterables.getOnlyElement(redisKeys), hashField) != null;
+            }
+            for (String redisKey : redisKeys) {
+                if (batch.projection(redisKey, hashField) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (redisKeys.size() == 1) {
+            String redisKey = Iterables.getOnlyElement(redisKeys);
+            if (isAggregate(fieldType)) {
+                return batch.type(redisKey) != RedisType.NONE;
+            } else {
+                return batch.binary(redisKey) != null;
+            }
+        }
+        return redisKeys.size() > 1;
+    }
+
+    /**
+     * Returns the keys that the key-pattern of the given field matches. With
+     * the {@link Strategy#SCRIPTED} strategy, the data types and contents of
+     * the matching keys are recorded in the given batch as well.
+     */
+    private Set<String> keysOf(Collection<Jedis> nodes, Batch batch, Field field) {
+        final KeyPattern pattern = this.patterns.of(field);
+        if (pattern.isLiteral()) {
+            // No need to discover keys if the pattern can only match a single
+            // key. Whether it exists follows from the reply of the read itself.
+            return ImmutableSortedSet.of(pattern.pattern());
+        }
+        // Every node holds a disjoint part of the key space, so the keys that
+        // are discovered on each of them are merged into one sorted set.
+        if (this.script != null) {
+            List<Callable<SortedMap<String, P2<RedisType, Object>>>> resolves = Lists.newArrayList();
+            for (final Jedis jedis : nodes) {
+                resolves.add(new Callable<SortedMap<String, P2<RedisType, Object>>>() {
+
+                    @Override
+                    public SortedMap<String, P2<RedisType, Object>> call() {
+                        return script.resolve(jedis, pattern.pattern(), scanCount);
                     }
-                    else if (Collection.class.isAssignableFrom(fieldType)) {
-                        value = nestedCollectionOf(field, jedis, redisKeys);
+                });
+            }
+            SortedMap<String, P2<RedisType, Object>> resolved = Maps.newTreeMap();
+            for (SortedMap<String, P2<RedisType, Object>> part : inParallel(this.executor, resolves)) {
+                resolved.putAll(part);
+            }
+            for (Map.Entry<String, P2<RedisType, Object>> entry : resolved.entrySet()) {
+                batch.resolved(entry.getKey(), entry.getValue()._1(), entry.getValue()._2());
+            }
+            return resolved.keySet();
+        } else {
+            List<Callable<List<String>>> scans = Lists.newArrayList();
+            for (final Jedis jedis : nodes) {
+                scans.add(new Callable<List<String>>() {
+
+                    @Override
+                    public List<String> call() {
+                        return Lists.newArrayList(scan(jedis, pattern.pattern(), scanCount));
                     }
-                } else {
-                    if (!allowNull) {
-                        value = nonNullValueOf(fieldType);
+                });
+            }
+            Set<String> redisKeys = Sets.newTreeSet();
+            for (List<String> part : inParallel(this.executor, scans)) {
+                redisKeys.addAll(part);
+            }
+            return redisKeys;
+        }
+    }
+
+    private Map<Field, Option> loadFromRedis(Iterable<? extends Field> fields) {
+        final Map<Field, Option> values = Maps.newLinkedHashMap();
+        final List<Field> toLoad = Lists.newArrayList();
+        final long generation = this.shared != null ? this.shared.generation() : 0;
+        for (Field field : fields) {
+            Option value = this.absent != null && this.absent.getIfPresent(field) != null ?
+                absentValueOf(field) : null;
+            RedisPayloadCache.Payload payload = null;
+            if (value == null && this.shared != null && isWholeValue(field)) {
+                payload = this.shared.get(field);
+            }
+            SortedMap<String, P2<RedisType, Object>> snapshotted = null;
+            if (value == null && payload == null && this.snapshot != null && isWholeValue(field)) {
+                snapshotted = this.snapshot.take(field);
+            }
+            if (value != null) {
+                values.put(field, value);
+            } else if (payload != null) {
+                // Shared with another field with the same key-pattern, and
+                // recorded just like a value that was loaded from Redis.
+                long start = System.nanoTime();
+                Batch batch = batchOf(payload.values());
+                value = payload.conversionOf(field);
+                if (value == null) {
+                    value = valueOf(field, batch, payload.values().keySet());
+                    if (isFound(field, batch, payload.values().keySet())) {
+                        value = payload.converted(field, value);
                     }
                 }
-                return Option.fromNull(value);
+                if (this.metrics != null) {
+                    this.metrics.statsOf(field).loaded(0, 0, 0, System.nanoTime() - start);
+                }
+                values.put(field, value);
+                record(field, batch, payload.values().keySet(), payload.values());
+            } else if (snapshotted != null) {
+                // Served from the snapshot without contacting Redis.
+                values.put(field, valueOf(field, batchOf(snapshotted), snapshotted.keySet()));
+            } else {
+                values.put(field, null);
+                toLoad.add(field);
             }
-        });
+        }
+        if (this.dispatcher != null) {
+            values.putAll(dispatch(toLoad, generation));
+        }
+        if (toLoad.isEmpty()) {
+            return values;
+        }
+        Loaded loaded;
+        if (this.shardedPool != null) {
+            loaded = using(this.shardedPool)._do(new F<ShardedJedis, Loaded>() {
+
+                @Override
+                public Loaded f(final ShardedJedis jedis) {
+                    return loadFrom(toLoad, jedis.getAllShards(), new F<String, Jedis>() {
+
+                        @Override
+                        public Jedis f(String redisKey) {
+                            return jedis.getShard(redisKey);
+                        }
+                    });
+                }
+            });
+        } else {
+            F<Jedis, Loaded> load = new F<Jedis, Loaded>() {
+
+                @Override
+                public Loaded f(Jedis jedis) {
+                    return loadFrom(toLoad, ImmutableList.of(jedis), Function.<String, Jedis>constant(jedis));
+                }
+            };
+            loaded = this.router != null ? this.router.read(load) : using(this.pool)._do(load);
+        }
+        values.putAll(valuesOf(loaded.redisKeys, loaded.batch, loaded.discoveryNanos, generation));
+        return values;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,238 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.strawberry.guice.Redis;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import fj.P2;
+import fj.data.Option;
+
+/**
+ * A two-level cache of the values that were loaded from Redis, shared by all
+ * fields with the same key-pattern. The first level holds the raw values
+ * (key, data type and contents) of the keys that a key-pattern matched,
+ * separately for fields that are injected with a single value and fields
+ * that are injected with a map or collection (as these are read with
+ * different commands). The second level is kept with every raw value, and
+ * holds the instances that it was converted to, one for every generic field
+ * type. Only immutable instances (such as strings and numbers) are kept, so
+ * that fields with the same key-pattern and such a type are injected with
+ * the same instance. Maps, collections, arrays and the defaults of absent
+ * values are converted anew for every field, so that modifying one does not
+ * affect the others.
+ *
+ * <p>
+ * Raw values are kept until they expire or until a key that their
+ * key-pattern matches is invalidated. A load that was already underway when
+ * keys are invalidated does not store its (possibly stale) raw values.
+ * </p>
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisPayloadCache {
+
+    private final Cache<Key, Payload> payloads;
+    private final KeyPatterns patterns;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates a cache in which raw values expire once the given duration has
+     * passed since they were loaded, or never if the duration is zero. The
+     * key-patterns of fields are taken from the given {@link KeyPatterns}.
+     */
+    RedisPayloadCache(long duration, TimeUnit unit, KeyPatterns patterns) {
+        this.patterns = patterns;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        if (duration > 0) {
+            builder.expireAfterWrite(duration, unit);
+        }
+        this.payloads = builder.build();
+    }
+
+    /**
+     * Returns the current generation of the cache, which changes whenever
+     * keys are invalidated. A load should take the generation before it
+     * contacts Redis, and pass it to {@link #put}.
+     */
+    long generation() {
+        return this.generation.get();
+    }
+
+    /**
+     * Returns the raw value that was loaded for the key-pattern of the given
+     * field, or {@code null} if it is not in the cache.
+     */
+    Payload get(Field field) {
+        return this.payloads.getIfPresent(key(field));
+    }
+
+    /**
+     * Stores the raw value that was loaded for the key-pattern of the given
+     * field, unless keys were invalidated since the given generation.
+     * @return The entry that holds the raw value, to which the instances that
+     * it is converted to should be added (even if it was not stored).
+     */
+    Payload put(Field field, long generation, SortedMap<String, P2<RedisType, Object>> values) {
+        Payload payload = new Payload(values);
+        if (this.generation.get() == generation) {
+            Key key = key(field);
+            this.payloads.put(key, payload);
+            if (this.generation.get() != generation) {
+                // Keys were invalidated while the value was being stored.
+                this.payloads.asMap().remove(key, payload);
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Returns the key under which the raw value for the key-pattern of the
+     * given field is stored. Fields with equal keys share their raw value.
+     */
+    Object keyOf(Field field) {
+        return key(field);
+    }
+
+    private Key key(Field field) {
+        Class<?> type = field.getType();
+        return new Key(this.patterns.of(field),
+            Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type));
+    }
+
+    /**
+     * Removes the raw values of all key-patterns that match the given key.
+     */
+    void invalidate(String redisKey) {
+        this.generation.incrementAndGet();
+        for (Key key : this.payloads.asMap().keySet()) {
+            if (key.pattern.matches(redisKey)) {
+                this.payloads.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all raw values.
+     */
+    void invalidateAll() {
+        this.generation.incrementAndGet();
+        this.payloads.invalidateAll();
+    }
+
+    /**
+     * The raw value of a key-pattern, with the instances that it has been
+     * converted to so far.
+     */
+    static final class Payload {
+
+        private static final Set<Class<?>> IMMUTABLE_TYPES = ImmutableSet.<Class<?>>of(
+            String.class, Character.class, Boolean.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class);
+
+        private final SortedMap<String, P2<RedisType, Object>> values;
+        private final ConcurrentMap<List<Object>, Option> conversions = new ConcurrentHashMap<List<Object>, Option>();
+
+        private Payload(SortedMap<String, P2<RedisType, Object>> values) {
+            this.values = values;
+        }
+
+        /**
+         * @return The raw values of the keys that the key-pattern matched.
+         */
+        SortedMap<String, P2<RedisType, Object>> values() {
+            return this.values;
+        }
+
+        /**
+         * Returns the instance that the raw value was converted to for the
+         * type of the given field, or {@code null} if it has not been
+         * converted to that type yet, or if instances of that type are not
+         * kept.
+         */
+        Option conversionOf(Field field) {
+            return isImmutable(field) ? this.conversions.get(conversionKeyOf(field)) : null;
+        }
+
+        /**
+         * Stores the instance that the raw value was converted to for the type
+         * of the given field if that type is immutable, and returns the
+         * instance that should be injected (which is the one stored first if
+         * two threads convert the raw value at the same time). The default
+         * of an absent value should not be passed here.
+         */
+        Option converted(Field field, Option value) {
+            if (!isImmutable(field)) {
+                return value;
+            }
+            Option previous = this.conversions.putIfAbsent(conversionKeyOf(field), value);
+            return previous != null ? previous : value;
+        }
+
+        private static boolean isImmutable(Field field) {
+            Class<?> type = field.getType();
+            return type.isPrimitive() || IMMUTABLE_TYPES.contains(type);
+        }
+
+        private static List<Object> conversionKeyOf(Field field) {
+            return ImmutableList.<Object>of(field.getGenericType(), field.getAnnotation(Redis.class).allowNull());
+        }
+    }
+
+    private static final class Key {
+
+        private final KeyPattern pattern;
+        private final boolean aggregate;
+
+        private Key(KeyPattern pattern, boolean aggregate) {
+            this.pattern = pattern;
+            this.aggregate = aggregate;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return this.aggregate == other.aggregate && this.pattern.pattern().equals(other.pattern.pattern());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.pattern.pattern(), this.aggregate);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.github.strawberry.guice.Redis;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import redis.clients.util.SafeEncoder;
+
+import fj.P;
+import fj.P2;
+
+/**
+ * A snapshot of the raw values (key, data type and contents) that were
+ * loaded from Redis for every key-pattern, kept in a compact binary file. A
+ * new process can inject its fields from the snapshot that a previous process
+ * left behind, instead of loading them all from Redis at once. Every field is
+ * served from the snapshot at most once; after that it is loaded from Redis
+ * as usual.
+ * 
+ * <p>
+ * The file is read through a memory-mapped buffer. It holds a header
+ * ({@code "STRB"} and a version), followed by every key-pattern with its
+ * matching keys. A key-pattern is stored separately for scalar fields and for
+ * aggregate (map or collection) fields, as these need not read the same raw
+ * values from the same keys. Strings are stored as length-prefixed UTF-8 bytes, and the
+ * contents of a key depend on its data type: the raw bytes of a string, the
+ * field-value pairs of a hash, or the elements of a list, set or sorted set.
+ * A file that cannot be read is ignored.
+ * </p>
+ *
+ * @author Wiehann Matthysen
+ */
+final class RedisSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(RedisSnapshot.class.getName());
+
+    private static final int MAGIC = 0x53545242;
+    private static final int VERSION = 2;
+
+    private final File file;
+    private final Map<Key, SortedMap<String, P2<RedisType, Object>>> stored;
+    private final Set<Field> served = Collections.newSetFromMap(new ConcurrentHashMap<Field, Boolean>());
+    private final ConcurrentMap<Key, SortedMap<String, P2<RedisType, Object>>> recorded =
+        new ConcurrentHashMap<Key, SortedMap<String, P2<RedisType, Object>>>();
+
+    RedisSnapshot(File file) {
+        this.file = file;
+        this.stored = read(file);
+    }
+
+    /**
+     * Determines whether the given field can still be served from the
+     * snapshot.
+     */
+    boolean contains(Field field) {
+        return !this.served.contains(field) && this.stored.containsKey(Key.of(field));
+    }
+
+    /**
+     * Returns the raw values of the keys that matched the key-pattern of the
+     * given field, or {@code null} if the field has already been served or if
+     * its key-pattern is not in the snapshot.
+     */
+    SortedMap<String, P2<RedisType, Object>> take(Field field) {
+        SortedMap<String, P2<RedisType, Object>> values = this.stored.get(Key.of(field));
+        return values != null && this.served.add(field) ? values : null;
+    }
+
+    /**
+     * Records the raw values of the keys that matched the key-pattern of the
+     * given field, to be written with the next {@link #save()}.
+     */
+    void record(Field field, SortedMap<String, P2<RedisType, Object>> values) {
+        this.recorded.put(Key.of(field), values);
+    }
+
+    /**
+     * Writes the recorded values (and the values from the snapshot that were
+     * not loaded again) to the snapshot file. The file is replaced as a whole,
+     * so that a process that reads it never sees a partially written file.
+     */
+    void save() throws IOException {
+        Map<Key, SortedMap<String, P2<RedisType, Object>>> values = Maps.newTreeMap();
+        values.putAll(this.stored);
+        values.putAll(this.recorded);
+
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        File temporary = File.createTempFile(this.file.getName(), ".tmp", parent);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(values.size());
+            for (Map.Entry<Key, SortedMap<String, P2<RedisType, Object>>> pattern : values.entrySet()) {
+                writeString(output, pattern.getKey().pattern);
+                output.writeBoolean(pattern.getKey().aggregate);
+                output.writeInt(pattern.getValue().size());
+                for (Map.Entry<String, P2<RedisType, Object>> key : pattern.getValue().entrySet()) {
+                    writeString(output, key.getKey());
+                    write(output, key.getValue()._1(), key.getValue()._2());
+                }
+            }
+        } finally {
+            output.close();
+        }
+        // Renaming fails on some platforms if the target exists.
+        if (!temporary.renameTo(this.file) && !(this.file.delete() && temporary.renameTo(this.file))) {
+            temporary.delete();
+            throw new IOException(String.format("Could not replace snapshot: (%s).", this.file));
+        }
+    }
+
+    private static void write(DataOutputStream output, RedisType type, Object payload) throws IOException {
+        output.writeByte(type.ordinal());
+        switch (type) {
+            case STRING: {
+                byte[] bytes = (byte[]) payload;
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } break;
+            case HASH: {
+                Map<?, ?> hash = (Map<?, ?>) payload;
+                output.writeInt(hash.size());
+                for (Map.Entry<?, ?> entry : hash.entrySet()) {
+                    writeString(output, (String) entry.getKey());
+                    writeString(output, (String) entry.getValue());
+                }
+            } break;
+            case LIST:
+            case SET:
+            case ZSET: {
+                Collection<?> elements = (Collection<?>) payload;
+                output.writeInt(elements.size());
+                for (Object element : elements) {
+                    writeString(output, (String) element);
+                }
+            } break;
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = SafeEncoder.encode(value);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static Map<Key, SortedMap<String, P2<RedisType, Object>>> read(File file) {
+        Map<Key, SortedMap<String, P2<RedisType, Object>>> values = Maps.newHashMap();
+        if (!file.isFile()) {
+            return values;
+        }
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    LOGGER.warning(String.format("Ignoring snapshot with unknown format: (%s).", file));
+                    return values;
+                }
+                int patterns = buffer.getInt();
+                for (int i = 0; i < patterns; ++i) {
+                    Key pattern = new Key(readString(buffer), buffer.get() != 0);
+                    SortedMap<String, P2<RedisType, Object>> keys = Maps.newTreeMap();
+                    int count = buffer.getInt();
+                    for (int j = 0; j < count; ++j) {
+                        String key = readString(buffer);
+                        RedisType type = RedisType.values()[buffer.get()];
+                        keys.put(key, P.p(type, read(buffer, type)));
+                    }
+                    values.put(pattern, keys);
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not read snapshot: (%s).", file), e);
+            values.clear();
+        } catch (RuntimeException e) {
+            // Truncated or corrupt contents (such as buffer underflows or
+            // invalid lengths).
+            LOGGER.log(Level.WARNING, String.format("Ignoring corrupt snapshot: (%s).", file), e);
+            values.clear();
+        }
+        return values;
+    }
+
+    private static Object read(ByteBuffer buffer, RedisType type) {
+        Object payload = null;
+        switch (type) {
+            case STRING: {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                payload = bytes;
+            } break;
+            case HASH: {
+                int size = buffer.getInt();
+                Map<String, String> hash = Maps.newHashMap();
+                for (int i = 0; i < size; ++i) {
+                    hash.put(readString(buffer), readString(buffer));
+                }
+                payload = hash;
+            } break;
+            case LIST: {
+                int size = buffer.getInt();
+                Collection<String> list = Lists.newArrayList();
+                for (int i = 0; i < size; ++i) {
+                    list.add(readString(buffer));
+                }
+                payload = list;
+            } break;
+            case SET:
+            case ZSET: {
+                int size = buffer.getInt();
+                Collection<String> set = Sets.newLinkedHashSet();
+                for (int i = 0; i < size; ++i) {
+                    set.add(readString(buffer));
+                }
+                payload = set;
+            } break;
+        }
+        return payload;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return SafeEncoder.encode(bytes);
+    }
+
+    /**
+     * The key-pattern of a field, and whether the field is an aggregate.
+     */
+    private static final class Key implements Comparable<Key> {
+
+        private final String pattern;
+        private final boolean aggregate;
+
+        private Key(String pattern, boolean aggregate) {
+            this.pattern = pattern;
+            this.aggregate = aggregate;
+        }
+
+        static Key of(Field field) {
+            Class<?> type = field.getType();
+            return new Key(field.getAnnotation(Redis.class).value(),
+                Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type));
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int comparison = this.pattern.compareTo(other.pattern);
+            return comparison != 0 ? comparison : Boolean.valueOf(this.aggregate).compareTo(other.aggregate);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return this.aggregate == other.aggregate && this.pattern.equals(other.pattern);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.pattern, this.aggregate);
+        }
+    }
+}
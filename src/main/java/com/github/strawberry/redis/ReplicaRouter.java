@@ -0,0 +1,250 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.strawberry.util.Histogram;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.F;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ * Routes reads across the replicas of a Redis database. Every read goes to
+ * the replica that has responded the fastest recently (as tracked by an
+ * exponentially weighted moving average of its latency), and falls back to
+ * the next replica (and finally to the primary) if it can not be reached.
+ * Any other failure (such as an error reply) is not retried on another node,
+ * as it would fail there as well.
+ * 
+ * <p>
+ * If hedging is enabled, a read that takes longer than the given percentile
+ * of the latencies of its replica is sent to the next replica as well, and the
+ * first answer is used. This cuts off the tail latency of a replica that is
+ * momentarily slow, at the cost of some duplicate reads.
+ * </p>
+ *
+ * @author Wiehann Matthysen
+ */
+final class ReplicaRouter {
+
+    private static final double ALPHA = 0.2;
+    private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(1);
+    private static final int MIN_SAMPLES = 10;
+
+    /**
+     * A pool of connections to a single Redis server, with its latency.
+     */
+    static final class Node {
+
+        private final JedisPool pool;
+        private final AtomicLong average = new AtomicLong(Double.doubleToLongBits(0.0));
+        private final Histogram latency = new Histogram();
+
+        Node(JedisPool pool) {
+            this.pool = pool;
+        }
+
+        JedisPool pool() {
+            return this.pool;
+        }
+
+        double average() {
+            return Double.longBitsToDouble(this.average.get());
+        }
+
+        void record(long nanos, boolean failed) {
+            if (!failed) {
+                this.latency.record(nanos);
+            }
+            double sample = failed ? Math.max(nanos, FAILURE_PENALTY) : nanos;
+            long current;
+            double updated;
+            do {
+                current = this.average.get();
+                double previous = Double.longBitsToDouble(current);
+                updated = previous == 0.0 ? sample : previous + ALPHA * (sample - previous);
+            } while (!this.average.compareAndSet(current, Double.doubleToLongBits(updated)));
+        }
+
+        long hedgeAfter(double quantile) {
+            return this.latency.count() < MIN_SAMPLES ? 0 : this.latency.percentile(quantile, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final Comparator<Node> BY_LATENCY = new Comparator<Node>() {
+
+        @Override
+        public int compare(Node left, Node right) {
+            return Double.compare(left.average(), right.average());
+        }
+    };
+
+    private final Node primary;
+    private final List<Node> replicas;
+    private final double hedgeQuantile;
+    private final ExecutorService executor;
+
+    /**
+     * @param primary The pool of connections to the primary.
+     * @param replicas The pools of connections to the replicas.
+     * @param hedgeQuantile The percentile (between 0 and 1) of the latencies
+     * of a replica after which a read is sent to the next replica as well, or
+     * 0 to disable hedging.
+     */
+    ReplicaRouter(JedisPool primary, List<JedisPool> replicas, double hedgeQuantile) {
+        this.primary = new Node(primary);
+        List<Node> nodes = Lists.newArrayList();
+        for (JedisPool replica : replicas) {
+            nodes.add(new Node(replica));
+        }
+        this.replicas = ImmutableList.copyOf(nodes);
+        this.hedgeQuantile = hedgeQuantile;
+        this.executor = hedgeQuantile > 0 ?
+            Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("strawberry-reader-%d").build()) :
+            null;
+    }
+
+    /**
+     * @return The nodes in the order in which they are tried: the replicas
+     * from the lowest to the highest average latency, followed by the primary.
+     */
+    List<Node> candidates() {
+        List<Node> candidates = Lists.newArrayList(this.replicas);
+        Collections.sort(candidates, BY_LATENCY);
+        candidates.add(this.primary);
+        return candidates;
+    }
+
+    /**
+     * Performs the given read on the most suitable node.
+     * @param callback The read to perform. It may be performed more than once
+     * (on different nodes) at the same time.
+     * @return The result of the first successful read.
+     */
+    <T> T read(F<Jedis, T> callback) {
+        List<Node> candidates = candidates();
+        long hedgeAfter = this.executor != null ? candidates.get(0).hedgeAfter(this.hedgeQuantile) : 0;
+        if (hedgeAfter <= 0) {
+            return readInOrder(candidates, callback);
+        }
+        CompletionService<T> completion = new ExecutorCompletionService<T>(this.executor);
+        int next = 0;
+        int pending = 0;
+        JedisConnectionException failure = null;
+        completion.submit(attempt(candidates.get(next++), callback));
+        ++pending;
+        try {
+            while (true) {
+                Future<T> done;
+                if (pending == 1 && next == 1 && next < candidates.size()) {
+                    done = completion.poll(hedgeAfter, TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        // Too slow; hedge with the next node.
+                        completion.submit(attempt(candidates.get(next++), callback));
+                        ++pending;
+                        continue;
+                    }
+                } else {
+                    done = completion.take();
+                }
+                --pending;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfInstanceOf(e.getCause(), Error.class);
+                    if (!(e.getCause() instanceof JedisConnectionException)) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    failure = (JedisConnectionException) e.getCause();
+                }
+                if (pending == 0) {
+                    if (next == candidates.size()) {
+                        throw failure;
+                    }
+                    completion.submit(attempt(candidates.get(next++), callback));
+                    ++pending;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static <T> T readInOrder(List<Node> candidates, F<Jedis, T> callback) {
+        JedisConnectionException failure = null;
+        for (Node node : candidates) {
+            try {
+                return attemptNow(node, callback);
+            } catch (JedisConnectionException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private static <T> Callable<T> attempt(final Node node, final F<Jedis, T> callback) {
+        return new Callable<T>() {
+
+            @Override
+            public T call() {
+                return attemptNow(node, callback);
+            }
+        };
+    }
+
+    /**
+     * Performs the given read on the given node. Only a failure to reach the
+     * node (which includes timeouts) counts against its latency; the node
+     * did respond if the read failed in any other way.
+     */
+    private static <T> T attemptNow(Node node, F<Jedis, T> callback) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            return using(node.pool())._do(callback);
+        } catch (JedisConnectionException e) {
+            failed = true;
+            throw e;
+        } finally {
+            node.record(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.strawberry.guice.Redis;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+
+import static com.github.strawberry.util.Types.genericTypeOf;
+import static com.github.strawberry.util.Types.isEqualTo;
+
+/**
+ * {@code Slice} holds the part of a list or sorted set that a field is
+ * injected with, as specified by {@link Redis#start()}, {@link Redis#end()},
+ * {@link Redis#minScore()}, {@link Redis#maxScore()} and
+ * {@link Redis#reverse()}. The scores of a sorted set are read as well if the
+ * field is a map of which the values are doubles (for example a
+ * {@code SortedMap<String, Double>}). Only the slice itself is read from
+ * Redis.
+ *
+ * @author Wiehann Matthysen
+ */
+final class Slice {
+
+    private static final String MIN = "-inf";
+    private static final String MAX = "+inf";
+
+    /**
+     * The slice of fields that are injected with the whole structure.
+     */
+    static final Slice WHOLE = new Slice(0, -1, MIN, MAX, false, false);
+
+    private final long start;
+    private final long end;
+    private final String minScore;
+    private final String maxScore;
+    private final boolean reverse;
+    private final boolean scores;
+
+    private Slice(long start, long end, String minScore, String maxScore, boolean reverse, boolean scores) {
+        this.start = start;
+        this.end = end;
+        this.minScore = minScore;
+        this.maxScore = maxScore;
+        this.reverse = reverse;
+        this.scores = scores;
+    }
+
+    /**
+     * Returns the slice that the given {@link Redis}-annotated field is to be
+     * injected with.
+     * @param field The annotated field.
+     * @return The slice of the field.
+     */
+    static Slice of(Field field) {
+        Redis annotation = field.getAnnotation(Redis.class);
+        boolean scores = Map.class.isAssignableFrom(field.getType())
+            && genericTypeOf(field, 1).exists(isEqualTo(Double.class));
+        Slice slice = new Slice(annotation.start(), annotation.end(),
+            annotation.minScore(), annotation.maxScore(), annotation.reverse(), scores);
+        return slice.equals(WHOLE) ? WHOLE : slice;
+    }
+
+    boolean isWhole() {
+        return this == WHOLE;
+    }
+
+    private boolean isByScore() {
+        return !this.minScore.equals(MIN) || !this.maxScore.equals(MAX);
+    }
+
+    /**
+     * Issues the read command for this slice of the list or sorted set that is
+     * stored at the given key on the given pipeline. The scores of a sorted
+     * set are returned as a map of members to scores, ordered by rank.
+     */
+    Response<?> fetch(Pipeline pipeline, String redisKey, RedisType redisType) {
+        if (redisType == RedisType.LIST) {
+            return pipeline.lrange(redisKey, this.start, this.end);
+        }
+        if (isByScore()) {
+            int offset = (int) this.start;
+            int count = this.end < 0 ? -1 : (int) (this.end - this.start + 1);
+            if (this.scores) {
+                return this.reverse ?
+                    pipeline.zrevrangeByScoreWithScores(redisKey, this.maxScore, this.minScore, offset, count) :
+                    pipeline.zrangeByScoreWithScores(redisKey, this.minScore, this.maxScore, offset, count);
+            }
+            return this.reverse ?
+                pipeline.zrevrangeByScore(redisKey, this.maxScore, this.minScore, offset, count) :
+                pipeline.zrangeByScore(redisKey, this.minScore, this.maxScore, offset, count);
+        }
+        if (this.scores) {
+            return this.reverse ?
+                pipeline.zrevrangeWithScores(redisKey, this.start, this.end) :
+                pipeline.zrangeWithScores(redisKey, this.start, this.end);
+        }
+        return this.reverse ?
+            pipeline.zrevrange(redisKey, this.start, this.end) :
+            pipeline.zrange(redisKey, this.start, this.end);
+    }
+
+    /**
+     * Converts the reply of {@link Slice#fetch} to the payload of the slice.
+     */
+    Object payloadOf(Object reply) {
+        if (!this.scores || !(reply instanceof Set)) {
+            return reply;
+        }
+        Map<String, Double> scored = Maps.newLinkedHashMap();
+        for (Object element : (Set<?>) reply) {
+            if (element instanceof Tuple) {
+                Tuple tuple = (Tuple) element;
+                scored.put(tuple.getElement(), tuple.getScore());
+            }
+        }
+        return scored;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Slice)) {
+            return false;
+        }
+        Slice other = (Slice) object;
+        return this.start == other.start && this.end == other.end
+            && this.minScore.equals(other.minScore) && this.maxScore.equals(other.maxScore)
+            && this.reverse == other.reverse && this.scores == other.scores;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.start, this.end, this.minScore, this.maxScore, this.reverse, this.scores);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Objects;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+
+import fj.F;
+
+import static com.github.strawberry.util.JedisUtil.using;
+
+/**
+ * {@code VersionPoller} reads a single version key (for example
+ * {@code config:__version}) from a Redis database at a fixed interval, and
+ * {@linkplain KeyspaceNotifier.Listener#reset() resets} its listeners
+ * whenever the value of that key has changed since the previous read. Whoever
+ * changes the other keys is expected to change the version key as well (for
+ * example with {@code INCR}), so that a process only has to issue a single
+ * {@code GET} per interval to find out whether anything has changed. The key
+ * is read on a background daemon thread. A read that fails (because Redis
+ * cannot be reached) is skipped, and a change that happened in the meantime
+ * is picked up by the next successful read.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class VersionPoller {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionPoller.class.getName());
+
+    private final JedisPool pool;
+    private final String key;
+    private final long interval;
+    private final List<KeyspaceNotifier.Listener> listeners =
+        new CopyOnWriteArrayList<KeyspaceNotifier.Listener>();
+
+    private final Object lock = new Object();
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Initializes a newly created {@code VersionPoller} that will read the
+     * given key from the database that the connections in the given
+     * {@code JedisPool} use.
+     * @param pool The pool of connections to a Redis database.
+     * @param key The version key.
+     * @param interval The time between two reads of the version key.
+     * @param unit The unit of {@code interval}.
+     */
+    public VersionPoller(JedisPool pool, String key, long interval, TimeUnit unit) {
+        this.pool = pool;
+        this.key = key;
+        this.interval = unit.toMillis(interval);
+    }
+
+    /**
+     * Registers the given listener to be reset when the version changes.
+     * @param listener The listener to register.
+     * @return This poller.
+     */
+    public VersionPoller addListener(KeyspaceNotifier.Listener listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Reads the current version, and starts reading the version key on a
+     * background thread. If the current version can not be read, the
+     * listeners are reset after the first successful read (since a change
+     * might have been missed). Calling this method while the poller is
+     * running has no effect.
+     * @return This poller.
+     */
+    public VersionPoller start() {
+        synchronized (this.lock) {
+            if (!this.running) {
+                this.running = true;
+                boolean known = true;
+                String version = null;
+                try {
+                    version = read();
+                } catch (JedisException e) {
+                    known = false;
+                }
+                final boolean initiallyKnown = known;
+                final String initialVersion = version;
+                this.thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        poll(initiallyKnown, initialVersion);
+                    }
+                }, "strawberry-version-poller");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Stops reading the version key.
+     */
+    public void stop() {
+        synchronized (this.lock) {
+            this.running = false;
+            if (this.thread != null) {
+                this.thread.interrupt();
+                this.thread = null;
+            }
+        }
+    }
+
+    private String read() {
+        return using(this.pool)._do(new F<Jedis, String>() {
+
+            @Override
+            public String f(Jedis jedis) {
+                return jedis.get(key);
+            }
+        });
+    }
+
+    private void poll(boolean known, String version) {
+        while (this.running) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            String current;
+            try {
+                current = read();
+            } catch (JedisException e) {
+                // Skipped; the version is compared again on the next read.
+                continue;
+            }
+            if (!known || !Objects.equal(version, current)) {
+                for (KeyspaceNotifier.Listener listener : this.listeners) {
+                    try {
+                        listener.reset();
+                    } catch (RuntimeException e) {
+                        // A failing listener should not stop the polling.
+                        LOGGER.log(Level.WARNING, "Listener could not be reset.", e);
+                    }
+                }
+            }
+            known = true;
+            version = current;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * {@code FieldMetrics} is a registry of the statistics of annotated fields
+ * (see {@link FieldStats}): how often their values are requested and loaded,
+ * and where the time to load them is spent. This makes it possible to find
+ * the fields that dominate the time that it takes to start up or to create
+ * instances. The same registry can be shared between modules and loaders.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class FieldMetrics implements FieldMetricsMXBean {
+
+    private static final Ordering<FieldStats> BY_LOAD_TIME = new Ordering<FieldStats>() {
+
+        @Override
+        public int compare(FieldStats left, FieldStats right) {
+            long leftTime = left.loadTime().total(TimeUnit.NANOSECONDS);
+            long rightTime = right.loadTime().total(TimeUnit.NANOSECONDS);
+            return leftTime < rightTime ? 1 : leftTime > rightTime ? -1 : 0;
+        }
+    };
+
+    private final ConcurrentMap<Field, FieldStats> stats = new ConcurrentHashMap<Field, FieldStats>();
+    private volatile ObjectName name;
+
+    /**
+     * Returns the statistics of the given field, creating them if the field
+     * was not tracked yet.
+     * @param field The annotated field.
+     * @return The statistics of the field.
+     */
+    public FieldStats statsOf(Field field) {
+        FieldStats current = this.stats.get(field);
+        if (current == null) {
+            FieldStats created = new FieldStats(field, patternOf(field));
+            current = this.stats.putIfAbsent(field, created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the key-pattern (the {@code value()} of the annotation) of the
+     * given field, or an empty string if the field has no such annotation.
+     */
+    private static String patternOf(Field field) {
+        for (Annotation annotation : field.getAnnotations()) {
+            try {
+                Object value = annotation.annotationType().getMethod("value").invoke(annotation);
+                if (value instanceof String) {
+                    return (String) value;
+                }
+            } catch (NoSuchMethodException e) {
+                // Not a key-pattern annotation.
+            } catch (IllegalAccessException e) {
+                // Not a key-pattern annotation.
+            } catch (InvocationTargetException e) {
+                // Not a key-pattern annotation.
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @return The statistics of all the tracked fields, ordered from the field
+     * that took the longest to load in total to the field that took the
+     * shortest.
+     */
+    public List<FieldStats> snapshot() {
+        return BY_LOAD_TIME.immutableSortedCopy(this.stats.values());
+    }
+
+    @Override
+    public List<FieldStats> getFields() {
+        return snapshot();
+    }
+
+    /**
+     * Discards the statistics of all the tracked fields.
+     */
+    @Override
+    public void reset() {
+        for (FieldStats current : this.stats.values()) {
+            current.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform {@link MBeanServer} under the
+     * name {@code com.github.strawberry:type=Fields,name=<name>}.
+     * @param name The name that identifies the metrics.
+     * @return These metrics.
+     * @throws IllegalStateException if the metrics could not be registered
+     * (for example because the name is already in use).
+     */
+    public FieldMetrics register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.github.strawberry:type=Fields,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format("Could not register field metrics: (%s).", name), e);
+        }
+        return this;
+    }
+
+    /**
+     * Removes these metrics from the platform {@link MBeanServer} if they were
+     * registered (see {@link #register(String)}).
+     */
+    public void unregister() {
+        ObjectName current = this.name;
+        if (current != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(current);
+            } catch (JMException e) {
+                // Already unregistered.
+            }
+            this.name = null;
+        }
+    }
+}
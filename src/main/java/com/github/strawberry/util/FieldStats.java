@@ -0,0 +1,205 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code FieldStats} holds the statistics of a single annotated field (see
+ * {@link FieldMetrics}). Loading a field is broken down in the following
+ * phases, each of which is kept in its own {@link Histogram}:
+ * 
+ * <ul>
+ * <li><b>discovery</b>: resolving the key-pattern of the field to the keys
+ * that it matches (for example with {@code SCAN}).</li>
+ * <li><b>type</b>: determining the data types of the matched keys (and
+ * reading string values along the way).</li>
+ * <li><b>payload</b>: reading the contents of aggregate values (hashes,
+ * lists, sets and sorted sets).</li>
+ * <li><b>parse</b>: converting the loaded contents to the type of the
+ * field.</li>
+ * </ul>
+ * 
+ * Fields that are loaded together share the round trips of the type and
+ * payload phases, so these phases record the duration of the round trip of
+ * the whole batch for each field in it.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class FieldStats {
+
+    private final Field field;
+    private final String pattern;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final Histogram loadTime = new Histogram();
+    private final Histogram discoveryTime = new Histogram();
+    private final Histogram typeTime = new Histogram();
+    private final Histogram payloadTime = new Histogram();
+    private final Histogram parseTime = new Histogram();
+
+    FieldStats(Field field, String pattern) {
+        this.field = field;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Records that the value of the field was requested for injection.
+     */
+    public void requested() {
+        this.requests.incrementAndGet();
+    }
+
+    /**
+     * Records that the value of the field was loaded, with the time (in
+     * nanoseconds) that was spent in every phase.
+     */
+    public void loaded(long discoveryNanos, long typeNanos, long payloadNanos, long parseNanos) {
+        this.loads.incrementAndGet();
+        this.discoveryTime.record(discoveryNanos);
+        this.typeTime.record(typeNanos);
+        this.payloadTime.record(payloadNanos);
+        this.parseTime.record(parseNanos);
+        this.loadTime.record(discoveryNanos + typeNanos + payloadNanos + parseNanos);
+    }
+
+    /**
+     * @return The field that these statistics belong to.
+     */
+    public Field field() {
+        return this.field;
+    }
+
+    /**
+     * @return The time that loading the field took in total.
+     */
+    public Histogram loadTime() {
+        return this.loadTime;
+    }
+
+    /**
+     * @return The time spent resolving the key-pattern of the field.
+     */
+    public Histogram discoveryTime() {
+        return this.discoveryTime;
+    }
+
+    /**
+     * @return The time spent determining the data types of the matched keys.
+     */
+    public Histogram typeTime() {
+        return this.typeTime;
+    }
+
+    /**
+     * @return The time spent reading the contents of aggregate values.
+     */
+    public Histogram payloadTime() {
+        return this.payloadTime;
+    }
+
+    /**
+     * @return The time spent converting the loaded contents.
+     */
+    public Histogram parseTime() {
+        return this.parseTime;
+    }
+
+    public String getDeclaringClass() {
+        return this.field.getDeclaringClass().getName();
+    }
+
+    public String getFieldName() {
+        return this.field.getName();
+    }
+
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * @return The number of times that the value of the field was requested
+     * for injection. This is only counted if the module that injects the
+     * field records statistics.
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return The number of times that the value of the field was loaded.
+     */
+    public long getLoads() {
+        return this.loads.get();
+    }
+
+    /**
+     * @return The fraction of requests that were served without loading the
+     * value of the field, or {@code 1.0} if it was never requested.
+     */
+    public double getHitRate() {
+        long n = this.requests.get();
+        return n == 0 ? 1.0 : (double) Math.max(n - this.loads.get(), 0) / n;
+    }
+
+    public long getTotalLoadTimeMillis() {
+        return this.loadTime.total(TimeUnit.MILLISECONDS);
+    }
+
+    public long getLoadTimeMeanMicros() {
+        return this.loadTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    public long getLoadTime99thPercentileMicros() {
+        return this.loadTime.percentile(0.99, TimeUnit.MICROSECONDS);
+    }
+
+    public long getDiscoveryTimeMeanMicros() {
+        return this.discoveryTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    public long getTypeTimeMeanMicros() {
+        return this.typeTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    public long getPayloadTimeMeanMicros() {
+        return this.payloadTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    public long getParseTimeMeanMicros() {
+        return this.parseTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    void reset() {
+        this.requests.set(0);
+        this.loads.set(0);
+        this.loadTime.reset();
+        this.discoveryTime.reset();
+        this.typeTime.reset();
+        this.payloadTime.reset();
+        this.parseTime.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s.%s (%s): %d request(s), %d load(s), %d us mean load time.",
+            getDeclaringClass(), getFieldName(), this.pattern, getRequests(), getLoads(), getLoadTimeMeanMicros());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations. Durations are counted in buckets whose
+ * bounds are powers of two (in nanoseconds), so that recording a duration
+ * only takes a few atomic increments and the histogram takes a fixed amount
+ * of memory. As a result, percentiles are estimates that are accurate to
+ * within a factor of two.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given duration.
+     * @param nanos The duration in nanoseconds. Negative durations are
+     * recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.incrementAndGet();
+        this.total.addAndGet(value);
+        long current;
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            // Retry until the maximum is at least the recorded value.
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @return The number of durations that were recorded.
+     */
+    public long count() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns the sum of the recorded durations.
+     * @param unit The unit in which the sum should be returned.
+     * @return The sum in the given unit.
+     */
+    public long total(TimeUnit unit) {
+        return unit.convert(this.total.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the mean of the recorded durations.
+     * @param unit The unit in which the mean should be returned.
+     * @return The mean in the given unit, or zero if nothing was recorded.
+     */
+    public long mean(TimeUnit unit) {
+        long n = this.count.get();
+        return n == 0 ? 0 : unit.convert(this.total.get() / n, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     * @param unit The unit in which the maximum should be returned.
+     * @return The maximum in the given unit, or zero if nothing was recorded.
+     */
+    public long max(TimeUnit unit) {
+        return unit.convert(this.max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Estimates the duration below which the given fraction of the recorded
+     * durations fall. The estimate is the upper bound of the bucket that
+     * contains the percentile, capped by the longest recorded duration.
+     * @param quantile The fraction (between 0 and 1) of durations, for example
+     * 0.99 for the 99th percentile.
+     * @param unit The unit in which the estimate should be returned.
+     * @return The estimate in the given unit, or zero if nothing was recorded.
+     */
+    public long percentile(double quantile, TimeUnit unit) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            snapshot[i] = this.counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                estimate = i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                break;
+            }
+        }
+        return unit.convert(Math.min(estimate, this.max.get()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Discards all recorded durations. Durations that are recorded while the
+     * histogram is being reset may be partially discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            this.counts.set(i, 0);
+        }
+        this.count.set(0);
+        this.total.set(0);
+        this.max.set(0);
+    }
+}
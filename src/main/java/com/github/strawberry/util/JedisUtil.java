@@ -17,12 +17,25 @@
  */
 package com.github.strawberry.util;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.MapMaker;
+
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.Pool;
 
 import fj.Effect;
 import fj.F;
+import fj.Unit;
 
 /**
  * A set of utility methods that makes it more convenient to work with
@@ -32,6 +45,8 @@ import fj.F;
  */
 public final class JedisUtil {
 
+    private static final ConcurrentMap<Pool<?>, PoolMetrics> METRICS = new MapMaker().weakKeys().makeMap();
+
     private JedisUtil() {}
 
     /**
@@ -139,39 +154,291 @@ public final class JedisUtil {
 
             @Override
             public <T> T _do(F<Jedis, T> callback) {
-                T result = null;
-                boolean returned = false;
-                Jedis jedis = pool.getResource();
-                try {
-                    result = callback.f(jedis);
-                } catch (JedisConnectionException e) {
-                    pool.returnBrokenResource(jedis);
-                    returned = true;
-                    throw e;
-                } finally {
-                    if (!returned) {
-                        pool.returnResource(jedis);
+                return call(pool, callback);
+            }
+
+            @Override
+            public void _do(final Effect<Jedis> callback) {
+                call(pool, new F<Jedis, Unit>() {
+
+                    @Override
+                    public Unit f(Jedis jedis) {
+                        callback.e(jedis);
+                        return Unit.unit();
                     }
-                }
-                return result;
+                });
+            }
+        };
+    }
+
+    /**
+     * @see JedisUtil#using(redis.clients.jedis.ShardedJedisPool)
+     */
+    public static interface ShardedCallbackBuilder {
+
+        public <T> T _do(F<ShardedJedis, T> callback);
+
+        public void _do(Effect<ShardedJedis> callback);
+    }
+
+    /**
+     * The equivalent of {@link JedisUtil#using(redis.clients.jedis.JedisPool)}
+     * for a {@link ShardedJedisPool}. The callback receives a
+     * {@link ShardedJedis} connection, which routes every key to the shard
+     * that owns it (see {@link ShardedJedis#getShard(String)}), and which is
+     * returned to the pool in the same way once the callback completes.
+     * @param pool The pool of {@code ShardedJedis} connections to be utilized
+     * during the callback step.
+     * @throws JedisConnectionException if an error occurred while sending or
+     * receiving data from one of the shards.
+     * @return The {@code ShardedCallbackBuilder} serving as bridge to the two
+     * {@code _do(...)} calls.
+     */
+    public static ShardedCallbackBuilder using(final ShardedJedisPool pool) {
+        return new ShardedCallbackBuilder() {
+
+            @Override
+            public <T> T _do(F<ShardedJedis, T> callback) {
+                return call(pool, callback);
             }
 
             @Override
-            public void _do(Effect<Jedis> callback) {
-                boolean returned = false;
-                Jedis jedis = pool.getResource();
-                try {
-                    callback.e(jedis);
-                } catch (JedisConnectionException e) {
-                    pool.returnBrokenResource(jedis);
-                    returned = true;
-                    throw e;
-                } finally {
-                    if (!returned) {
-                        pool.returnResource(jedis);
+            public void _do(final Effect<ShardedJedis> callback) {
+                call(pool, new F<ShardedJedis, Unit>() {
+
+                    @Override
+                    public Unit f(ShardedJedis jedis) {
+                        callback.e(jedis);
+                        return Unit.unit();
                     }
-                }
+                });
+            }
+        };
+    }
+
+    private static <R, T> T call(Pool<R> pool, F<R, T> callback) {
+        PoolMetrics metrics = METRICS.get(pool);
+        if (metrics == null) {
+            return call(pool, pool.getResource(), callback);
+        }
+        long start = System.nanoTime();
+        R jedis;
+        try {
+            jedis = pool.getResource();
+        } catch (RuntimeException e) {
+            metrics.checkoutFailed(System.nanoTime() - start);
+            throw e;
+        }
+        long checkedOut = System.nanoTime();
+        metrics.checkedOut(checkedOut - start);
+        boolean broken = false;
+        try {
+            return call(pool, jedis, callback);
+        } catch (JedisConnectionException e) {
+            broken = true;
+            throw e;
+        } finally {
+            metrics.returned(System.nanoTime() - checkedOut, broken);
+        }
+    }
+
+    private static <R, T> T call(Pool<R> pool, R jedis, F<R, T> callback) {
+        T result = null;
+        boolean returned = false;
+        try {
+            result = callback.f(jedis);
+        } catch (JedisConnectionException e) {
+            pool.returnBrokenResource(jedis);
+            returned = true;
+            throw e;
+        } finally {
+            if (!returned) {
+                pool.returnResource(jedis);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Starts recording how the connections of the given {@link JedisPool} are
+     * used by {@link JedisUtil#using(redis.clients.jedis.JedisPool)}: the time
+     * spent waiting for a connection, the time that a connection is held, the
+     * number of connections that are returned as broken and the number of
+     * connections that are in use at the same time (see {@link PoolMetrics}).
+     * Pools that are not instrumented do not record anything.
+     * @param pool The pool of connections to instrument.
+     * @return The metrics of the pool. Instrumenting a pool more than once
+     * returns the same metrics.
+     */
+    public static PoolMetrics instrument(JedisPool pool) {
+        return instrumentPool(pool);
+    }
+
+    /**
+     * Starts recording how the connections of the given
+     * {@link ShardedJedisPool} are used by
+     * {@link JedisUtil#using(redis.clients.jedis.ShardedJedisPool)} (see
+     * {@link JedisUtil#instrument(JedisPool)}).
+     * @param pool The pool of sharded connections to instrument.
+     * @return The metrics of the pool.
+     */
+    public static PoolMetrics instrument(ShardedJedisPool pool) {
+        return instrumentPool(pool);
+    }
+
+    private static PoolMetrics instrumentPool(Pool<?> pool) {
+        PoolMetrics metrics = new PoolMetrics();
+        PoolMetrics existing = METRICS.putIfAbsent(pool, metrics);
+        return existing != null ? existing : metrics;
+    }
+
+    /**
+     * Returns the metrics of the given {@link JedisPool}.
+     * @param pool The pool of connections.
+     * @return The metrics of the pool, or {@code null} if the pool has not
+     * been instrumented (see {@link JedisUtil#instrument(JedisPool)}).
+     */
+    public static PoolMetrics metricsOf(JedisPool pool) {
+        return METRICS.get(pool);
+    }
+
+    /**
+     * Returns the metrics of the given {@link ShardedJedisPool}.
+     * @param pool The pool of sharded connections.
+     * @return The metrics of the pool, or {@code null} if the pool has not
+     * been instrumented (see {@link JedisUtil#instrument(ShardedJedisPool)}).
+     */
+    public static PoolMetrics metricsOf(ShardedJedisPool pool) {
+        return METRICS.get(pool);
+    }
+
+    /**
+     * Incrementally iterates over the keys in the Redis database that match
+     * the given glob-style pattern by making use of the cursor-based
+     * {@code SCAN} command. In contrast to {@code KEYS}, which blocks the
+     * Redis server while it walks the whole key space, every {@code SCAN}
+     * call only does a bounded amount of work (as hinted by the given count),
+     * so that other clients are not stalled while the keys are discovered.
+     * 
+     * <p>
+     * Every call to {@link Iterable#iterator()} starts a new scan from the
+     * beginning of the key space. The next batch of keys is only requested
+     * from Redis once the current batch has been consumed. Note that
+     * {@code SCAN} may return a key more than once, so callers that need
+     * unique keys should collect the result in a {@link java.util.Set}.
+     * </p>
+     * 
+     * @param jedis The {@code Jedis} connection to use for the scan. This
+     * connection should not be used for anything else until the iteration
+     * has completed.
+     * @param pattern The glob-style pattern that keys should match.
+     * @param count The number of elements that Redis should inspect with
+     * every {@code SCAN} call.
+     * @return An {@code Iterable} over the matching keys.
+     */
+    public static Iterable<String> scan(final Jedis jedis, final String pattern, final int count) {
+        final ScanParams params = new ScanParams();
+        params.match(pattern);
+        params.count(count);
+        return new Iterable<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                return new CursorIterator<String>() {
+
+                    @Override
+                    protected ScanResult<String> scan(String cursor) {
+                        return jedis.scan(cursor, params);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Iterates over the fields and values of the hash that is stored at the
+     * given key with the {@code HSCAN} command, so that a large hash is read
+     * in chunks rather than with a single (blocking) {@code HGETALL}. As with
+     * {@link JedisUtil#scan(Jedis, String, int)}, a field may be returned more
+     * than once if the hash is modified during the iteration.
+     * @param jedis The Redis connection.
+     * @param key The key of the hash.
+     * @param count The number of elements that Redis should inspect with every
+     * {@code HSCAN} call.
+     * @return An iterable over the fields and values of the hash.
+     */
+    public static Iterable<Map.Entry<String, String>> hscan(final Jedis jedis, final String key, final int count) {
+        final ScanParams params = new ScanParams();
+        params.count(count);
+        return new Iterable<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new CursorIterator<Map.Entry<String, String>>() {
+
+                    @Override
+                    protected ScanResult<Map.Entry<String, String>> scan(String cursor) {
+                        return jedis.hscan(key, cursor, params);
+                    }
+                };
             }
         };
     }
+
+    /**
+     * Iterates over the members of the set that is stored at the given key
+     * with the {@code SSCAN} command, so that a large set is read in chunks
+     * rather than with a single (blocking) {@code SMEMBERS} (see
+     * {@link JedisUtil#hscan(Jedis, String, int)}).
+     * @param jedis The Redis connection.
+     * @param key The key of the set.
+     * @param count The number of elements that Redis should inspect with every
+     * {@code SSCAN} call.
+     * @return An iterable over the members of the set.
+     */
+    public static Iterable<String> sscan(final Jedis jedis, final String key, final int count) {
+        final ScanParams params = new ScanParams();
+        params.count(count);
+        return new Iterable<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                return new CursorIterator<String>() {
+
+                    @Override
+                    protected ScanResult<String> scan(String cursor) {
+                        return jedis.sscan(key, cursor, params);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Follows the cursor of one of the {@code SCAN} family of commands,
+     * fetching the next chunk of elements only once the previous one has been
+     * consumed.
+     */
+    private abstract static class CursorIterator<T> extends AbstractIterator<T> {
+
+        private String cursor = ScanParams.SCAN_POINTER_START;
+        private Iterator<T> batch = null;
+
+        protected abstract ScanResult<T> scan(String cursor);
+
+        @Override
+        protected T computeNext() {
+            while (this.batch == null || !this.batch.hasNext()) {
+                // A returned cursor of zero signals the end of the
+                // iteration (but only after the first call).
+                if (this.batch != null && this.cursor.equals(ScanParams.SCAN_POINTER_START)) {
+                    return endOfData();
+                }
+                ScanResult<T> result = scan(this.cursor);
+                this.cursor = result.getStringCursor();
+                this.batch = result.getResult().iterator();
+            }
+            return this.batch.next();
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@code PoolMetrics} records how the connections of a
+ * {@link redis.clients.jedis.JedisPool} are used by
+ * {@link JedisUtil#using(redis.clients.jedis.JedisPool)} once the pool has
+ * been instrumented (see
+ * {@link JedisUtil#instrument(redis.clients.jedis.JedisPool)}). It tells apart
+ * the time that callers wait to check out a connection from the time that
+ * they hold on to it, which makes it possible to see whether a saturated pool
+ * is too small or whether the commands sent over it are slow. All metrics are
+ * recorded without locking.
+ *
+ * @author Wiehann Matthysen
+ */
+public final class PoolMetrics implements PoolMetricsMBean {
+
+    private final Histogram checkoutWait = new Histogram();
+    private final Histogram holdTime = new Histogram();
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong checkoutFailures = new AtomicLong();
+    private final AtomicLong brokenReturns = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile ObjectName name;
+
+    PoolMetrics() {}
+
+    void checkedOut(long waitNanos) {
+        this.checkoutWait.record(waitNanos);
+        this.checkouts.incrementAndGet();
+        int current = this.inFlight.incrementAndGet();
+        int max;
+        while (current > (max = this.maxInFlight.get()) && !this.maxInFlight.compareAndSet(max, current)) {
+            // Retry until the maximum is at least the current count.
+        }
+    }
+
+    void checkoutFailed(long waitNanos) {
+        this.checkoutWait.record(waitNanos);
+        this.checkoutFailures.incrementAndGet();
+    }
+
+    void returned(long holdNanos, boolean broken) {
+        this.inFlight.decrementAndGet();
+        this.holdTime.record(holdNanos);
+        if (broken) {
+            this.brokenReturns.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The time that callers waited to check out a connection
+     * (including checkouts that failed).
+     */
+    public Histogram checkoutWait() {
+        return this.checkoutWait;
+    }
+
+    /**
+     * @return The time that callers held on to a connection before it was
+     * returned to the pool.
+     */
+    public Histogram holdTime() {
+        return this.holdTime;
+    }
+
+    @Override
+    public long getCheckouts() {
+        return this.checkouts.get();
+    }
+
+    @Override
+    public long getCheckoutFailures() {
+        return this.checkoutFailures.get();
+    }
+
+    @Override
+    public long getBrokenReturns() {
+        return this.brokenReturns.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return this.maxInFlight.get();
+    }
+
+    @Override
+    public long getCheckoutWaitMeanMicros() {
+        return this.checkoutWait.mean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getCheckoutWait99thPercentileMicros() {
+        return this.checkoutWait.percentile(0.99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getCheckoutWaitMaxMicros() {
+        return this.checkoutWait.max(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHoldTimeMeanMicros() {
+        return this.holdTime.mean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHoldTime99thPercentileMicros() {
+        return this.holdTime.percentile(0.99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getHoldTimeMaxMicros() {
+        return this.holdTime.max(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Discards the recorded durations and counters. The number of connections
+     * that are currently in flight is kept.
+     */
+    @Override
+    public void reset() {
+        this.checkoutWait.reset();
+        this.holdTime.reset();
+        this.checkouts.set(0);
+        this.checkoutFailures.set(0);
+        this.brokenReturns.set(0);
+        this.maxInFlight.set(this.inFlight.get());
+    }
+
+    /**
+     * Registers these metrics with the platform {@link MBeanServer} under the
+     * name {@code com.github.strawberry:type=JedisPool,name=<name>}.
+     * @param name The name that identifies the pool.
+     * @return These metrics.
+     * @throws IllegalStateException if the metrics could not be registered
+     * (for example because the name is already in use).
+     */
+    public PoolMetrics register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.github.strawberry:type=JedisPool,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format("Could not register pool metrics: (%s).", name), e);
+        }
+        return this;
+    }
+
+    /**
+     * Removes these metrics from the platform {@link MBeanServer} if they were
+     * registered (see {@link #register(String)}).
+     */
+    public void unregister() {
+        ObjectName current = this.name;
+        if (current != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(current);
+            } catch (JMException e) {
+                // Already unregistered.
+            }
+            this.name = null;
+        }
+    }
+}
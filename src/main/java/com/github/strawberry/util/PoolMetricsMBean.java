@@ -0,0 +1,52 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+/**
+ * The management interface of {@link PoolMetrics}, through which the
+ * metrics of a {@link redis.clients.jedis.JedisPool} can be read over JMX.
+ * Durations are in microseconds.
+ *
+ * @author Wiehann Matthysen
+ */
+public interface PoolMetricsMBean {
+
+    long getCheckouts();
+
+    long getCheckoutFailures();
+
+    long getBrokenReturns();
+
+    int getInFlight();
+
+    int getMaxInFlight();
+
+    long getCheckoutWaitMeanMicros();
+
+    long getCheckoutWait99thPercentileMicros();
+
+    long getCheckoutWaitMaxMicros();
+
+    long getHoldTimeMeanMicros();
+
+    long getHoldTime99thPercentileMicros();
+
+    long getHoldTimeMaxMicros();
+
+    void reset();
+}
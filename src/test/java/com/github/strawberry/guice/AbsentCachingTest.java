@@ -0,0 +1,176 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class AbsentCachingTest {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Jedis jedis;
+
+    @Before
+    public void setup() {
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static Injector injectorOf(final RedisModule module) {
+        return Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                install(module);
+            }
+        });
+    }
+
+
+
+    public static class OptionalContainer {
+
+        @Redis("test:optional")
+        private String optionalString;
+
+        @Redis(value = "test:optional:number", allowNull = false)
+        private Integer optionalInteger;
+    }
+
+    @Test
+    public void test_that_absent_value_is_kept_until_it_expires() throws InterruptedException {
+        RedisLoader loader = RedisLoader.builder(this.pool).cacheAbsent(300, TimeUnit.MILLISECONDS).build();
+        Injector injector = injectorOf(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).build(loader)));
+
+        OptionalContainer dummy = injector.getInstance(OptionalContainer.class);
+        assertThat(dummy.optionalString, is(nullValue()));
+        assertThat(dummy.optionalInteger, is(equalTo(0)));
+        assertThat(loader.absentStats().missCount(), is(equalTo(2L)));
+
+        this.jedis.set("test:optional", "test_value");
+        this.jedis.set("test:optional:number", "42");
+        dummy = injector.getInstance(OptionalContainer.class);
+        assertThat(dummy.optionalString, is(nullValue()));
+        assertThat(dummy.optionalInteger, is(equalTo(0)));
+        assertThat(loader.absentStats().hitCount(), is(equalTo(2L)));
+
+        Thread.sleep(400);
+        dummy = injector.getInstance(OptionalContainer.class);
+        assertThat(dummy.optionalString, is(equalTo("test_value")));
+        assertThat(dummy.optionalInteger, is(equalTo(42)));
+    }
+
+    public static class OptionalListContainer {
+
+        @Redis(value = "test:optional:list", allowNull = false)
+        private List<String> optionalList;
+    }
+
+    @Test
+    public void test_that_absent_default_is_not_shared() {
+        RedisLoader loader = RedisLoader.builder(this.pool).cacheAbsent(1, TimeUnit.MINUTES).build();
+        Injector injector = injectorOf(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).build(loader)));
+
+        OptionalListContainer first = injector.getInstance(OptionalListContainer.class);
+        first.optionalList.add("test_value");
+        OptionalListContainer second = injector.getInstance(OptionalListContainer.class);
+        assertThat(loader.absentStats().hitCount(), is(equalTo(1L)));
+        assertThat(second.optionalList, is(not(sameInstance(first.optionalList))));
+        assertThat(second.optionalList.isEmpty(), is(true));
+    }
+
+    @Test
+    public void test_that_present_value_is_not_kept_as_absent() {
+        RedisLoader loader = RedisLoader.builder(this.pool).cacheAbsent(1, TimeUnit.MINUTES).build();
+        Injector injector = injectorOf(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).build(loader)));
+
+        this.jedis.set("test:optional", "test_value");
+        OptionalContainer dummy = injector.getInstance(OptionalContainer.class);
+        assertThat(dummy.optionalString, is(equalTo("test_value")));
+
+        this.jedis.set("test:optional", "new_value");
+        dummy = injector.getInstance(OptionalContainer.class);
+        assertThat(dummy.optionalString, is(equalTo("new_value")));
+        // Only the (absent) integer field is served without contacting Redis.
+        assertThat(loader.absentStats().hitCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void test_that_absent_value_expires_before_cached_values() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Injector injector = injectorOf(RedisModule.builder(this.pool).
+                refreshAfterWrite(1, TimeUnit.MINUTES, executor).
+                cacheAbsent(300, TimeUnit.MILLISECONDS).
+                build());
+
+            OptionalContainer dummy = injector.getInstance(OptionalContainer.class);
+            assertThat(dummy.optionalString, is(nullValue()));
+
+            this.jedis.set("test:optional", "test_value");
+            Thread.sleep(400);
+            dummy = injector.getInstance(OptionalContainer.class);
+            assertThat(dummy.optionalString, is(equalTo("test_value")));
+
+            // Now that the value is present, it is cached for as long as the
+            // refresh interval.
+            this.jedis.set("test:optional", "new_value");
+            Thread.sleep(400);
+            dummy = injector.getInstance(OptionalContainer.class);
+            assertThat(dummy.optionalString, is(equalTo("test_value")));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class BatchInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private LoadingCache<Field, Option> cache;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.cache));
+    }
+
+    @Before
+    public void setup() {
+        this.cache = CacheBuilder.newBuilder().build(new RedisLoader(this.pool));
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class MultipleFieldContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis(value = "test:integer", allowNull = false)
+        private int injectedInteger;
+
+        @Redis("test:bytes")
+        private byte[] injectedBytes;
+
+        @Redis("test:list")
+        private List<String> injectedList;
+
+        @Redis("test:map:*")
+        private Map<String, Map<String, String>> injectedMaps;
+
+        @Redis("test:missing")
+        private String injectedMissing = "default_value";
+
+        // Shares its key with injectedString.
+        @Redis("test:string")
+        private List<String> injectedStringInList;
+    }
+
+    @Test
+    public void test_that_all_fields_of_class_are_injected() {
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:integer", "42");
+        this.jedis.set("test:bytes", "bytes");
+        this.jedis.rpush("test:list", "value_01", "value_02");
+        this.jedis.hset("test:map:01", "key", "value_01");
+        this.jedis.hset("test:map:02", "key", "value_02");
+
+        MultipleFieldContainer dummy = this.injector.getInstance(MultipleFieldContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedInteger, is(42));
+        assertThat(dummy.injectedBytes, is(equalTo("bytes".getBytes())));
+        assertThat(dummy.injectedList, is(equalTo((List<String>)ImmutableList.of("value_01", "value_02"))));
+        assertThat(dummy.injectedMaps.size(), is(2));
+        assertThat(dummy.injectedMaps.get("test:map:01"), is(equalTo((Map<String, String>)ImmutableMap.of("key", "value_01"))));
+        assertThat(dummy.injectedMaps.get("test:map:02"), is(equalTo((Map<String, String>)ImmutableMap.of("key", "value_02"))));
+        assertThat(dummy.injectedMissing, is(equalTo("default_value")));
+        assertThat(dummy.injectedStringInList, is(equalTo((List<String>)ImmutableList.of("test_value"))));
+    }
+
+    @Test
+    public void test_that_cached_fields_are_not_reloaded() throws Exception {
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:integer", "42");
+        MultipleFieldContainer dummy = this.injector.getInstance(MultipleFieldContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedInteger, is(42));
+        assertThat(dummy.injectedBytes, is(nullValue()));
+
+        // Only the invalidated field should be loaded again.
+        this.jedis.set("test:string", "new_value");
+        this.jedis.set("test:integer", "43");
+        this.cache.invalidate(MultipleFieldContainer.class.getDeclaredField("injectedInteger"));
+        dummy = this.injector.getInstance(MultipleFieldContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedInteger, is(43));
+    }
+}
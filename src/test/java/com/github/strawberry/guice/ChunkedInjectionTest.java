@@ -0,0 +1,130 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests the injection of large structures that are read in chunks (see
+ * {@link RedisModule.Builder#chunkSize(int)}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class ChunkedInjectionTest extends AbstractModule {
+
+    // Larger than the size up to which Redis encodes hashes, sets and sorted
+    // sets compactly (and returns them whole from a single SCAN call).
+    private static final int SIZE = 1000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(RedisModule.builder(this.pool).chunkSize(64).build());
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class ChunkedContainer {
+
+        @Redis("test:list")
+        private List<String> injectedList;
+
+        @Redis("test:hash")
+        private Map<String, String> injectedHash;
+
+        @Redis("test:set")
+        private Set<String> injectedSet;
+
+        @Redis("test:zset")
+        private List<String> injectedSortedSet;
+
+        @Redis("test:list*")
+        private Map<String, List<String>> injectedLists;
+    }
+
+    @Test
+    public void test_that_large_structures_are_injected_in_chunks() {
+        List<String> expectedList = Lists.newArrayList();
+        Map<String, String> expectedHash = Maps.newHashMap();
+        Set<String> expectedSet = Sets.newHashSet();
+        List<String> expectedSortedSet = Lists.newArrayList();
+        for (int i = 0; i < SIZE; ++i) {
+            String value = String.format("value_%04d", i);
+            this.jedis.rpush("test:list", value);
+            this.jedis.hset("test:hash", "field_" + i, value);
+            this.jedis.sadd("test:set", value);
+            this.jedis.zadd("test:zset", SIZE - i, value);
+            expectedList.add(value);
+            expectedHash.put("field_" + i, value);
+            expectedSet.add(value);
+            expectedSortedSet.add(0, value);
+        }
+        // A list that ends exactly on a chunk boundary.
+        for (int i = 0; i < 128; ++i) {
+            this.jedis.rpush("test:list:boundary", String.valueOf(i));
+        }
+
+        ChunkedContainer container = this.injector.getInstance(ChunkedContainer.class);
+        assertThat(container.injectedList, is(equalTo(expectedList)));
+        assertThat(container.injectedHash, is(equalTo(expectedHash)));
+        assertThat(container.injectedSet, is(equalTo(expectedSet)));
+        assertThat(container.injectedSortedSet, is(equalTo(expectedSortedSet)));
+        assertThat(container.injectedLists.get("test:list"), is(equalTo(expectedList)));
+        assertThat(container.injectedLists.get("test:list:boundary").size(), is(128));
+    }
+}
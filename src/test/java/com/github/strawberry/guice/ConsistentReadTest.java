@@ -0,0 +1,187 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests that the fields of an object are read at a single point in time (see
+ * {@link RedisModule.Builder#consistentReads()}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class ConsistentReadTest extends AbstractModule {
+
+    private static final int INJECTIONS = 500;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private RedisModule module;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+    }
+
+    @Before
+    public void setup() {
+        this.jedis = this.pool.getResource();
+        update(this.jedis, 0);
+        this.module = RedisModule.builder(this.pool).consistentReads().build();
+        this.injector = Guice.createInjector(this);
+    }
+
+    @After
+    public void teardown() {
+        this.module.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static void update(Jedis jedis, int version) {
+        Transaction transaction = jedis.multi();
+        transaction.set("test:config:host", "host-" + version);
+        transaction.set("test:config:port", String.valueOf(version));
+        transaction.hset("test:config:db", "version", String.valueOf(version));
+        transaction.set("test:pair:first", String.valueOf(version));
+        transaction.set("test:pair:second", String.valueOf(version));
+        transaction.exec();
+    }
+
+    private long callsOf(String command) {
+        Matcher matcher = Pattern.compile("cmdstat_" + command + ":calls=(\\d+)")
+            .matcher(this.jedis.info("commandstats"));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+
+
+    public static class ScalarContainer {
+
+        @Redis("test:config:host")
+        private String host;
+
+        @Redis("test:config:port")
+        private int port;
+
+        @Redis(value = "test:config:db", field = "version")
+        private int version;
+    }
+
+    public static class AggregateContainer {
+
+        @Redis("test:config:port")
+        private int port;
+
+        @Redis("test:config:db")
+        private Map<String, String> db;
+
+        @Redis("test:pair:*")
+        private Map<String, String> pairs;
+    }
+
+    @Test
+    public void test_that_scalar_fields_are_read_in_one_transaction() {
+        long execs = callsOf("exec");
+        long watches = callsOf("watch");
+        ScalarContainer container = this.injector.getInstance(ScalarContainer.class);
+        assertThat(container.host, is(equalTo("host-0")));
+        assertThat(container.port, is(0));
+        assertThat(container.version, is(0));
+        assertThat(callsOf("exec") - execs, is(1L));
+        assertThat(callsOf("watch") - watches, is(0L));
+    }
+
+    @Test
+    public void test_that_aggregate_fields_are_read_in_a_watched_transaction() {
+        long execs = callsOf("exec");
+        long watches = callsOf("watch");
+        AggregateContainer container = this.injector.getInstance(AggregateContainer.class);
+        assertThat(container.port, is(0));
+        assertThat(container.db.get("version"), is(equalTo("0")));
+        assertThat(container.pairs.get("test:pair:first"), is(equalTo("0")));
+        assertThat(container.pairs.get("test:pair:second"), is(equalTo("0")));
+        assertThat(callsOf("exec") - execs, is(1L));
+        assertThat(callsOf("watch") - watches, is(1L));
+    }
+
+    @Test
+    public void test_that_fields_changed_together_are_injected_together() throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                Jedis jedis = pool.getResource();
+                try {
+                    for (int version = 1; running.get(); ++version) {
+                        update(jedis, version);
+                    }
+                } finally {
+                    pool.returnResource(jedis);
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < INJECTIONS; ++i) {
+                ScalarContainer scalars = this.injector.getInstance(ScalarContainer.class);
+                assertThat(scalars.host, is(equalTo("host-" + scalars.port)));
+                assertThat(scalars.version, is(scalars.port));
+                AggregateContainer aggregates = this.injector.getInstance(AggregateContainer.class);
+                assertThat(aggregates.db.get("version"), is(equalTo(String.valueOf(aggregates.port))));
+                assertThat(aggregates.pairs.get("test:pair:first"), is(equalTo(String.valueOf(aggregates.port))));
+                assertThat(aggregates.pairs.get("test:pair:second"), is(equalTo(String.valueOf(aggregates.port))));
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_that_consistent_reads_can_not_be_chunked() {
+        RedisLoader.builder(this.pool).chunkSize(10).consistentReads().build();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.util.FieldMetrics;
+import com.github.strawberry.util.FieldStats;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class FieldStatsTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+    private final FieldMetrics metrics = new FieldMetrics();
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        RedisLoader loader = RedisLoader.builder(this.pool).recordStats(this.metrics).build();
+        install(new RedisModule(CacheBuilder.newBuilder().recordStats().build(loader)).recordStats(this.metrics));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class StatsContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+    }
+
+    @Test
+    public void test_that_requests_and_loads_are_recorded_per_field() throws Exception {
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:map:a", "a");
+        this.jedis.set("test:map:b", "b");
+        for (int i = 0; i < 4; ++i) {
+            this.injector.getInstance(StatsContainer.class);
+        }
+
+        List<FieldStats> snapshot = this.metrics.snapshot();
+        assertThat(snapshot.size(), is(equalTo(2)));
+        for (FieldStats stats : snapshot) {
+            assertThat(stats.getDeclaringClass(), is(equalTo(StatsContainer.class.getName())));
+            assertThat(stats.getRequests(), is(equalTo(4L)));
+            assertThat(stats.getLoads(), is(equalTo(1L)));
+            assertThat(stats.getHitRate(), is(equalTo(0.75)));
+            assertThat(stats.loadTime().count(), is(equalTo(1L)));
+        }
+        FieldStats mapStats = this.metrics.statsOf(StatsContainer.class.getDeclaredField("injectedMap"));
+        assertThat(mapStats.getPattern(), is(equalTo("test:map:*")));
+        assertThat(mapStats.getFieldName(), is(equalTo("injectedMap")));
+
+        this.metrics.register("test");
+        try {
+            ObjectName name = new ObjectName("com.github.strawberry:type=Fields,name=\"test\"");
+            CompositeData[] fields = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Fields");
+            assertThat(fields.length, is(equalTo(2)));
+            assertThat(fields[0].get("loads"), is(equalTo((Object) 1L)));
+        } finally {
+            this.metrics.unregister();
+        }
+
+        this.metrics.reset();
+        assertThat(mapStats.getRequests(), is(equalTo(0L)));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests the injection of single fields of hashes (see {@link Redis#field()}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class HashProjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+        this.jedis.hmset("test:config:db", ImmutableMap.of(
+            "poolSize", "20", "host", "localhost", "timeout", "1.5"));
+        this.jedis.hset("test:user:1", "name", "alice");
+        this.jedis.hset("test:user:2", "name", "bob");
+        this.jedis.hset("test:user:3", "email", "carol@example.com");
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private long callsOf(String command) {
+        Matcher matcher = Pattern.compile("cmdstat_" + command + ":calls=(\\d+)")
+            .matcher(this.jedis.info("commandstats"));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+
+
+    public static class ConfigContainer {
+
+        @Redis(value = "test:config:db", field = "poolSize")
+        private int poolSize;
+
+        @Redis(value = "test:config:db", field = "host")
+        private String host;
+
+        @Redis(value = "test:config:db", field = "timeout")
+        private double timeout;
+
+        @Redis(value = "test:config:db", field = "missing")
+        private String missing;
+
+        @Redis(value = "test:config:db", field = "missing", allowNull = false)
+        private Long missingNonNull;
+
+        @Redis(value = "test:config:other", field = "host")
+        private String missingHash;
+    }
+
+    public static class UsersContainer {
+
+        @Redis(value = "test:user:*", field = "name")
+        private Map<String, String> names;
+
+        @Redis(value = "test:user:*", field = "name")
+        private List<String> nameList;
+    }
+
+    @Test
+    public void test_that_hash_fields_are_injected() {
+        ConfigContainer container = this.injector.getInstance(ConfigContainer.class);
+        assertThat(container.poolSize, is(20));
+        assertThat(container.host, is(equalTo("localhost")));
+        assertThat(container.timeout, is(1.5));
+        assertThat(container.missing, is(nullValue()));
+        assertThat(container.missingNonNull, is(0L));
+        assertThat(container.missingHash, is(nullValue()));
+    }
+
+    @Test
+    public void test_that_hash_fields_are_read_with_one_hmget_per_hash() {
+        long hmgets = callsOf("hmget");
+        long hgetalls = callsOf("hgetall");
+        this.injector.getInstance(ConfigContainer.class);
+        assertThat(callsOf("hmget") - hmgets, is(2L));
+        assertThat(callsOf("hgetall") - hgetalls, is(0L));
+    }
+
+    @Test
+    public void test_that_hash_fields_of_matching_keys_are_injected() {
+        UsersContainer container = this.injector.getInstance(UsersContainer.class);
+        assertThat(container.names, is(equalTo((Map<String, String>) ImmutableMap.of(
+            "test:user:1", "alice", "test:user:2", "bob"))));
+        assertThat(container.nameList.size(), is(2));
+    }
+}
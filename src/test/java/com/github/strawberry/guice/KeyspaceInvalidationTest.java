@@ -0,0 +1,148 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class KeyspaceInvalidationTest extends AbstractModule {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private RedisModule module;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+    }
+
+    @Before
+    public void setup() throws InterruptedException {
+        this.jedis = this.pool.getResource();
+        this.jedis.configSet("notify-keyspace-events", "KA");
+        this.module = RedisModule.builder(this.pool).invalidateOnChange().build();
+        this.injector = Guice.createInjector(this);
+        waitForSubscription();
+    }
+
+    @After
+    public void teardown() {
+        this.module.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.jedis.configSet("notify-keyspace-events", "");
+        this.pool.returnResource(this.jedis);
+    }
+
+    private void waitForSubscription() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.jedis.pubsubNumPat() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+
+
+    public static class InvalidationContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+
+        @Redis("test:other")
+        private String injectedOther;
+    }
+
+    private InvalidationContainer awaitString(String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        InvalidationContainer dummy = this.injector.getInstance(InvalidationContainer.class);
+        while (!expected.equals(dummy.injectedString) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            dummy = this.injector.getInstance(InvalidationContainer.class);
+        }
+        return dummy;
+    }
+
+    @Test
+    public void test_that_values_are_cached_until_changed() throws InterruptedException {
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:map:01", "value_01");
+        InvalidationContainer dummy = awaitString("test_value");
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedMap.get("test:map:01"), is(equalTo("value_01")));
+        assertThat(dummy.injectedOther, is(nullValue()));
+
+        // Without notifications, the cached value should be injected.
+        this.jedis.configSet("notify-keyspace-events", "");
+        this.jedis.set("test:string", "unnoticed_value");
+        dummy = this.injector.getInstance(InvalidationContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        this.jedis.configSet("notify-keyspace-events", "KA");
+
+        // Changing the key of a field should invalidate only that field.
+        this.jedis.set("test:string", "new_value");
+        dummy = awaitString("new_value");
+        assertThat(dummy.injectedString, is(equalTo("new_value")));
+
+        // Adding a key that matches a pattern should invalidate that field.
+        this.jedis.set("test:map:02", "value_02");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (dummy.injectedMap.size() != 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            dummy = this.injector.getInstance(InvalidationContainer.class);
+        }
+        assertThat(dummy.injectedMap.get("test:map:02"), is(equalTo("value_02")));
+
+        // Deleting a key should invalidate the field as well.
+        this.jedis.del("test:string");
+        deadline = System.currentTimeMillis() + TIMEOUT;
+        while (dummy.injectedString != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            dummy = this.injector.getInstance(InvalidationContainer.class);
+        }
+        assertThat(dummy.injectedString, is(nullValue()));
+    }
+}
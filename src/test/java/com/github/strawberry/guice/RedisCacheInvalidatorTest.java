@@ -0,0 +1,108 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.KeyPatterns;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class RedisCacheInvalidatorTest {
+
+    private RedisCacheInvalidator invalidator;
+    private AtomicInteger loads;
+    private volatile String changedKey;
+    private Field field;
+
+    public static class InvalidatedContainer {
+
+        @Redis("test:config:*")
+        private String config;
+    }
+
+    @Before
+    public void setup() throws NoSuchFieldException {
+        this.loads = new AtomicInteger();
+        this.field = InvalidatedContainer.class.getDeclaredField("config");
+        this.invalidator = new RedisCacheInvalidator(new CacheLoader<Field, Option>() {
+
+            @Override
+            public Option load(Field field) throws Exception {
+                return loadAll(ImmutableList.of(field)).get(field);
+            }
+
+            @Override
+            public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+                // A key is changed while the first attempt is underway.
+                if (loads.incrementAndGet() == 1 && changedKey != null) {
+                    invalidator.changed(changedKey);
+                }
+                Map<Field, Option> values = Maps.newHashMap();
+                for (Field field : fields) {
+                    values.put(field, Option.<Object>some(loads.get()));
+                }
+                return values;
+            }
+        }, new KeyPatterns());
+    }
+
+    @Test
+    public void test_that_load_is_retried_when_a_matching_key_changes() throws Exception {
+        this.changedKey = "test:config:host";
+        assertThat(this.invalidator.load(this.field).some(), is((Object) 2));
+        assertThat(this.loads.get(), is(2));
+    }
+
+    @Test
+    public void test_that_load_is_not_retried_when_another_key_changes() throws Exception {
+        this.changedKey = "test:other";
+        assertThat(this.invalidator.loadAll(ImmutableList.of(this.field)).get(this.field).some(), is((Object) 1));
+        assertThat(this.loads.get(), is(1));
+    }
+
+    @Test
+    public void test_that_load_is_retried_on_reset() throws Exception {
+        this.invalidator = new RedisCacheInvalidator(new CacheLoader<Field, Option>() {
+
+            @Override
+            public Option load(Field field) throws Exception {
+                if (loads.incrementAndGet() == 1) {
+                    invalidator.reset();
+                }
+                return Option.<Object>some(loads.get());
+            }
+        }, new KeyPatterns());
+        assertThat(this.invalidator.load(this.field).some(), is((Object) 2));
+    }
+}
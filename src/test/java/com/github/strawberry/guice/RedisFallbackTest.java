@@ -0,0 +1,215 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class RedisFallbackTest {
+
+    private StubLoader stub;
+    private Field field;
+    private RedisFallback fallback;
+
+    private static class StubLoader extends CacheLoader<Field, Option> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing = false;
+        private volatile RuntimeException error = null;
+        private volatile long delay = 0;
+        private volatile String value = "test_value";
+
+        @Override
+        public Option load(Field field) throws Exception {
+            this.calls.incrementAndGet();
+            if (this.delay > 0) {
+                Thread.sleep(this.delay);
+            }
+            if (this.failing) {
+                throw new JedisConnectionException("Redis is down.");
+            }
+            if (this.error != null) {
+                throw this.error;
+            }
+            return Option.<Object>some(this.value);
+        }
+
+        @Override
+        public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+            Map<Field, Option> values = Maps.newHashMap();
+            for (Field field : fields) {
+                values.put(field, load(field));
+            }
+            return values;
+        }
+    }
+
+    public static class FallbackContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+    }
+
+    @Before
+    public void setup() throws NoSuchFieldException {
+        this.stub = new StubLoader();
+        this.field = FallbackContainer.class.getDeclaredField("injectedString");
+    }
+
+    @After
+    public void teardown() {
+        if (this.fallback != null) {
+            this.fallback.shutdown();
+        }
+    }
+
+    private void assertFails() throws Exception {
+        try {
+            this.fallback.load(this.field);
+            fail("Expected JedisConnectionException.");
+        } catch (JedisConnectionException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void test_that_last_value_is_served_when_load_fails() throws Exception {
+        this.fallback = new RedisFallback(this.stub, TimeUnit.MILLISECONDS.toNanos(300), 0, 0, 0);
+
+        this.stub.failing = true;
+        assertFails();
+
+        this.stub.failing = false;
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+
+        this.stub.failing = true;
+        this.stub.value = "new_value";
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        assertThat(this.fallback.loadAll(ImmutableList.of(this.field)).get(this.field).some(),
+            is(equalTo((Object) "test_value")));
+
+        // Values that are too stale are not served.
+        Thread.sleep(400);
+        assertFails();
+    }
+
+    @Test
+    public void test_that_last_value_is_served_when_load_is_too_slow() throws Exception {
+        this.fallback = new RedisFallback(this.stub, TimeUnit.MINUTES.toNanos(1), TimeUnit.MILLISECONDS.toNanos(100), 0, 0);
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+
+        this.stub.value = "new_value";
+        this.stub.delay = 300;
+        long start = System.nanoTime();
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 250, is(true));
+
+        // The slow load is kept once it completes.
+        Thread.sleep(400);
+        this.stub.failing = true;
+        this.stub.delay = 0;
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "new_value")));
+    }
+
+    @Test
+    public void test_that_last_value_is_served_when_too_many_loads_are_running() throws Exception {
+        this.fallback = new RedisFallback(this.stub, TimeUnit.MINUTES.toNanos(1), TimeUnit.MILLISECONDS.toNanos(20), 0, 0);
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+
+        // Every load hangs, so the loaders and their queue fill up.
+        this.stub.delay = 5000;
+        for (int i = 0; i < RedisFallback.LOADERS + RedisFallback.QUEUED + 1; i++) {
+            assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        }
+        // Refused loads never reach Redis, and no more threads are started.
+        assertThat(this.stub.calls.get(), is(equalTo(1 + RedisFallback.LOADERS)));
+    }
+
+    @Test
+    public void test_that_redis_is_not_contacted_while_circuit_is_open() throws Exception {
+        this.fallback = new RedisFallback(this.stub, 0, 0, 2, TimeUnit.MILLISECONDS.toNanos(200));
+        this.stub.failing = true;
+        assertFails();
+        assertFails();
+        assertThat(this.stub.calls.get(), is(equalTo(2)));
+
+        // The circuit is open, so Redis is not contacted.
+        assertFails();
+        assertThat(this.stub.calls.get(), is(equalTo(2)));
+
+        // After the open duration a single probe is let through, and a failed
+        // probe opens the circuit again.
+        Thread.sleep(250);
+        assertFails();
+        assertFails();
+        assertThat(this.stub.calls.get(), is(equalTo(3)));
+
+        // A successful probe closes the circuit.
+        Thread.sleep(250);
+        this.stub.failing = false;
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        assertThat(this.stub.calls.get(), is(equalTo(5)));
+    }
+
+    @Test
+    public void test_that_circuit_closes_when_probe_fails_otherwise() throws Exception {
+        this.fallback = new RedisFallback(this.stub, 0, 0, 1, TimeUnit.MILLISECONDS.toNanos(200));
+        this.stub.failing = true;
+        assertFails();
+
+        // A probe that fails with another error still reaches Redis.
+        Thread.sleep(250);
+        this.stub.failing = false;
+        this.stub.error = new JedisDataException("WRONGTYPE");
+        try {
+            this.fallback.load(this.field);
+            fail("Expected JedisDataException.");
+        } catch (JedisDataException e) {
+            // Expected.
+        }
+
+        this.stub.error = null;
+        assertThat(this.fallback.load(this.field).some(), is(equalTo((Object) "test_value")));
+        assertThat(this.stub.calls.get(), is(equalTo(3)));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class RedisSingleFlightTest {
+
+    private StubLoader stub;
+    private RedisSingleFlight singleFlight;
+    private ExecutorService executor;
+    private Field first;
+    private Field second;
+    private Field third;
+
+    private static class StubLoader extends CacheLoader<Field, Option> {
+
+        private final AtomicInteger loads = new AtomicInteger();
+        private final List<Field> loaded = Lists.newCopyOnWriteArrayList();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public Option load(Field field) throws Exception {
+            return loadAll(ImmutableList.of(field)).get(field);
+        }
+
+        @Override
+        public Map<Field, Option> loadAll(Iterable<? extends Field> fields) throws Exception {
+            this.loads.incrementAndGet();
+            this.entered.countDown();
+            this.released.await(5, TimeUnit.SECONDS);
+            Map<Field, Option> values = Maps.newHashMap();
+            for (Field field : fields) {
+                this.loaded.add(field);
+                values.put(field, Option.<Object>some(field.getName()));
+            }
+            return values;
+        }
+    }
+
+    public static class Container {
+
+        @Redis("test:first")
+        private String first;
+
+        @Redis("test:second")
+        private String second;
+
+        @Redis("test:third")
+        private String third;
+    }
+
+    @Before
+    public void setup() throws NoSuchFieldException {
+        this.stub = new StubLoader();
+        this.singleFlight = new RedisSingleFlight(this.stub);
+        this.executor = Executors.newCachedThreadPool();
+        this.first = Container.class.getDeclaredField("first");
+        this.second = Container.class.getDeclaredField("second");
+        this.third = Container.class.getDeclaredField("third");
+    }
+
+    @After
+    public void teardown() {
+        this.stub.released.countDown();
+        this.executor.shutdownNow();
+    }
+
+    private Future<Map<Field, Option>> loadAll(final Field... fields) {
+        return this.executor.submit(new Callable<Map<Field, Option>>() {
+
+            @Override
+            public Map<Field, Option> call() throws Exception {
+                return singleFlight.loadAll(ImmutableList.copyOf(fields));
+            }
+        });
+    }
+
+    @Test
+    public void test_that_concurrent_loads_share_one_flight() throws Exception {
+        List<Future<Map<Field, Option>>> results = Lists.newArrayList();
+        results.add(loadAll(this.first));
+        this.stub.entered.await(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 20; ++i) {
+            results.add(loadAll(this.first));
+        }
+        Thread.sleep(100);
+        this.stub.released.countDown();
+        for (Future<Map<Field, Option>> result : results) {
+            assertThat(result.get().get(this.first), is(equalTo((Option) Option.<Object>some("first"))));
+        }
+        assertThat(this.stub.loads.get(), is(1));
+
+        // Nothing is kept after the flight has completed.
+        assertThat(this.singleFlight.load(this.first), is(equalTo((Option) Option.<Object>some("first"))));
+        assertThat(this.stub.loads.get(), is(2));
+    }
+
+    @Test
+    public void test_that_overlapping_batches_only_load_missing_fields() throws Exception {
+        Future<Map<Field, Option>> firstBatch = loadAll(this.first, this.second);
+        this.stub.entered.await(5, TimeUnit.SECONDS);
+        Future<Map<Field, Option>> secondBatch = loadAll(this.second, this.third);
+        Thread.sleep(100);
+        this.stub.released.countDown();
+
+        assertThat(firstBatch.get().size(), is(2));
+        Map<Field, Option> values = secondBatch.get();
+        assertThat(values.get(this.second), is(equalTo((Option) Option.<Object>some("second"))));
+        assertThat(values.get(this.third), is(equalTo((Option) Option.<Object>some("third"))));
+        assertThat(this.stub.loaded.size(), is(3));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class RefreshAheadTest extends AbstractModule {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private ExecutorService executor;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(RedisModule.builder(this.pool).refreshAfterWrite(200, TimeUnit.MILLISECONDS, this.executor).build());
+    }
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newSingleThreadExecutor();
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class RefreshedContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+    }
+
+    @Test
+    public void test_that_cached_value_is_served_while_refreshing() throws InterruptedException {
+        this.jedis.set("test:string", "test_value");
+        RefreshedContainer dummy = this.injector.getInstance(RefreshedContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+
+        // Before the refresh interval has passed, the cached value is used.
+        this.jedis.set("test:string", "new_value");
+        dummy = this.injector.getInstance(RefreshedContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+
+        // After the refresh interval, the cached value is still served while
+        // the new value is loaded in the background.
+        Thread.sleep(250);
+        dummy = this.injector.getInstance(RefreshedContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!"new_value".equals(dummy.injectedString) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            dummy = this.injector.getInstance(RefreshedContainer.class);
+        }
+        assertThat(dummy.injectedString, is(equalTo("new_value")));
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ReinjectionTest extends AbstractModule {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private RedisModule module;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+    }
+
+    @Before
+    public void setup() throws InterruptedException {
+        this.jedis = this.pool.getResource();
+        this.jedis.configSet("notify-keyspace-events", "KA");
+        this.module = RedisModule.builder(this.pool).invalidateOnChange().reinjectOnChange().build();
+        this.injector = Guice.createInjector(this);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.jedis.pubsubNumPat() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void teardown() {
+        this.module.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.jedis.configSet("notify-keyspace-events", "");
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class ReinjectedContainer {
+
+        @Redis("test:string")
+        private volatile String injectedString;
+
+        @Redis(value = "test:forced", forceUpdate = true)
+        private volatile String injectedForced = "default_value";
+    }
+
+    private static void await(ReinjectedContainer dummy, String expectedString, String expectedForced)
+        throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline
+            && !(equal(dummy.injectedString, expectedString) && equal(dummy.injectedForced, expectedForced))) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @Test
+    public void test_that_changed_values_are_injected_into_existing_instance() throws InterruptedException {
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:forced", "forced_value");
+        ReinjectedContainer dummy = this.injector.getInstance(ReinjectedContainer.class);
+        await(dummy, "test_value", "forced_value");
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedForced, is(equalTo("forced_value")));
+
+        this.jedis.set("test:string", "new_value");
+        await(dummy, "new_value", "forced_value");
+        assertThat(dummy.injectedString, is(equalTo("new_value")));
+        assertThat(dummy.injectedForced, is(equalTo("forced_value")));
+
+        // A removed key only overwrites the current value if forced.
+        this.jedis.del("test:forced");
+        this.jedis.del("test:string");
+        await(dummy, "new_value", null);
+        assertThat(dummy.injectedForced, is(nullValue()));
+        assertThat(dummy.injectedString, is(equalTo("new_value")));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.github.strawberry.redis.RedisLoader.Strategy;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class ScriptedInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(CacheBuilder.newBuilder().maximumSize(0).build(
+            new RedisLoader(this.pool, RedisLoader.DEFAULT_SCAN_COUNT, Strategy.SCRIPTED))));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class ScriptedContainer {
+
+        @Redis("test:string:*")
+        private Map<String, String> injectedStrings;
+
+        @Redis("test:object:*")
+        private List<Object> injectedObjects;
+
+        @Redis("test:single:*")
+        private int injectedInteger;
+
+        @Redis("test:single:*")
+        private byte[] injectedBytes;
+
+        @Redis("test:missing:*")
+        private List<String> injectedMissing = ImmutableList.of("default_value");
+    }
+
+    @Test
+    public void test_that_pattern_is_resolved_by_script() {
+        for (int i = 0; i < 10; ++i) {
+            this.jedis.set(String.format("test:string:%s", i), String.format("test_value:%s", i));
+        }
+        this.jedis.set("test:object:01", "value");
+        this.jedis.hset("test:object:02", "key", "value");
+        this.jedis.rpush("test:object:03", "value_01", "value_02");
+        this.jedis.sadd("test:object:04", "value");
+        this.jedis.zadd("test:object:05", 1.0, "value");
+        this.jedis.set("test:single:01", "42");
+
+        ScriptedContainer dummy = this.injector.getInstance(ScriptedContainer.class);
+        assertThat(dummy.injectedStrings.size(), is(10));
+        for (int i = 0; i < 10; ++i) {
+            assertThat(dummy.injectedStrings.get(String.format("test:string:%s", i)),
+                is(equalTo(String.format("test_value:%s", i))));
+        }
+        assertThat(dummy.injectedObjects.size(), is(5));
+        assertThat(dummy.injectedObjects.get(0), is(equalTo((Object)"value")));
+        assertThat(dummy.injectedObjects.get(1), is(equalTo((Object)ImmutableMap.of("key", "value"))));
+        assertThat(dummy.injectedObjects.get(2), is(equalTo((Object)ImmutableList.of("value_01", "value_02"))));
+        assertThat(dummy.injectedObjects.get(3), is(equalTo((Object)ImmutableSet.of("value"))));
+        assertThat(dummy.injectedObjects.get(4), is(equalTo((Object)ImmutableSet.of("value"))));
+        assertThat(dummy.injectedInteger, is(42));
+        assertThat(dummy.injectedBytes, is(equalTo("42".getBytes())));
+        assertThat(dummy.injectedMissing, is(equalTo((List<String>)ImmutableList.of("default_value"))));
+    }
+
+    @Test
+    public void test_that_script_is_loaded_again_after_flush() {
+        this.jedis.set("test:single:01", "42");
+        ScriptedContainer dummy = this.injector.getInstance(ScriptedContainer.class);
+        assertThat(dummy.injectedInteger, is(42));
+
+        this.jedis.scriptFlush();
+        this.jedis.set("test:single:01", "43");
+        dummy = this.injector.getInstance(ScriptedContainer.class);
+        assertThat(dummy.injectedInteger, is(43));
+    }
+}
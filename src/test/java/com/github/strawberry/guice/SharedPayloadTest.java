@@ -0,0 +1,211 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests that fields with the same key-pattern share the values that are
+ * loaded from Redis (see {@link RedisModule.Builder#sharePayloads()}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class SharedPayloadTest extends AbstractModule {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private RedisModule module;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+    }
+
+    @Before
+    public void setup() throws InterruptedException {
+        this.jedis = this.pool.getResource();
+        this.jedis.configSet("notify-keyspace-events", "KA");
+        this.jedis.set("test:string", "test_value");
+        this.jedis.set("test:map:01", "value_01");
+        this.jedis.set("test:map:02", "value_02");
+        this.module = RedisModule.builder(this.pool).invalidateOnChange().sharePayloads().build();
+        this.injector = Guice.createInjector(this);
+        waitForSubscription();
+    }
+
+    @After
+    public void teardown() {
+        this.module.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.jedis.configSet("notify-keyspace-events", "");
+        this.pool.returnResource(this.jedis);
+    }
+
+    private void waitForSubscription() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (this.jedis.pubsubNumPat() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private long callsOf(String command) {
+        Matcher matcher = Pattern.compile("cmdstat_" + command + ":calls=(\\d+)")
+            .matcher(this.jedis.info("commandstats"));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+
+
+    public static class FirstContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+    }
+
+    public static class SecondContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+
+        @Redis("test:map:*")
+        private List<String> injectedList;
+    }
+
+    @Test
+    public void test_that_fields_with_the_same_key_pattern_share_one_read() {
+        FirstContainer first = this.injector.getInstance(FirstContainer.class);
+        long gets = callsOf("get");
+        long scans = callsOf("scan");
+        SecondContainer second = this.injector.getInstance(SecondContainer.class);
+        assertThat(callsOf("get") - gets, is(0L));
+        assertThat(callsOf("scan") - scans, is(0L));
+        assertThat(second.injectedString, is(equalTo("test_value")));
+        assertThat(second.injectedString, is(sameInstance(first.injectedString)));
+        assertThat(second.injectedMap, is(equalTo(first.injectedMap)));
+        assertThat(second.injectedList.size(), is(2));
+        assertThat(second.injectedList.contains("value_01"), is(true));
+    }
+
+    public static class FirstDefaultContainer {
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+
+        @Redis(value = "test:missing", allowNull = false)
+        private List<String> injectedMissing;
+    }
+
+    public static class SecondDefaultContainer {
+
+        @Redis("test:map:*")
+        private Map<String, String> injectedMap;
+
+        @Redis(value = "test:missing", allowNull = false)
+        private List<String> injectedMissing;
+    }
+
+    @Test
+    public void test_that_collections_are_not_shared_between_fields() {
+        FirstDefaultContainer first = this.injector.getInstance(FirstDefaultContainer.class);
+        first.injectedMap.put("test:map:03", "value_03");
+        first.injectedMissing.add("value");
+
+        SecondDefaultContainer second = this.injector.getInstance(SecondDefaultContainer.class);
+        assertThat(second.injectedMap, is(not(sameInstance(first.injectedMap))));
+        assertThat(second.injectedMap.size(), is(2));
+        assertThat(second.injectedMissing, is(not(sameInstance(first.injectedMissing))));
+        assertThat(second.injectedMissing.isEmpty(), is(true));
+    }
+
+    @Test
+    public void test_that_shared_values_are_discarded_when_changed() throws InterruptedException {
+        this.injector.getInstance(FirstContainer.class);
+        this.jedis.set("test:string", "new_value");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        SecondContainer second = this.injector.getInstance(SecondContainer.class);
+        while (!"new_value".equals(second.injectedString) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            second = this.injector.getInstance(SecondContainer.class);
+        }
+        assertThat(second.injectedString, is(equalTo("new_value")));
+        // The cached values of other fields may be invalidated a moment later.
+        FirstContainer first = this.injector.getInstance(FirstContainer.class);
+        while (!"new_value".equals(first.injectedString) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            first = this.injector.getInstance(FirstContainer.class);
+        }
+        assertThat(first.injectedString, is(equalTo("new_value")));
+        assertThat(first.injectedMap.get("test:map:02"), is(equalTo("value_02")));
+    }
+
+    public static class MissingContainer {
+
+        @Redis("test:missing")
+        private String firstString;
+
+        @Redis("test:missing")
+        private String secondString;
+    }
+
+    @Test
+    public void test_that_shared_values_are_recorded_as_absent() throws Exception {
+        RedisLoader loader = RedisLoader.builder(this.pool).sharePayloads().cacheAbsent(1, TimeUnit.MINUTES).build();
+        loader.load(MissingContainer.class.getDeclaredField("firstString"));
+        long types = callsOf("type");
+        loader.load(MissingContainer.class.getDeclaredField("secondString"));
+        assertThat(callsOf("type") - types, is(0L));
+        assertThat(loader.isAbsent(MissingContainer.class.getDeclaredField("firstString")), is(true));
+        assertThat(loader.isAbsent(MissingContainer.class.getDeclaredField("secondString")), is(true));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests the injection of slices of lists and sorted sets (see
+ * {@link Redis#start()}, {@link Redis#end()}, {@link Redis#minScore()},
+ * {@link Redis#maxScore()} and {@link Redis#reverse()}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class SliceInjectionTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(new RedisModule(this.pool));
+    }
+
+    @Before
+    public void setup() {
+        this.injector = Guice.createInjector(this);
+        this.jedis = this.pool.getResource();
+        for (int i = 0; i < 10; ++i) {
+            this.jedis.rpush("test:list", String.valueOf(i));
+            this.jedis.zadd("test:zset", i, "member_" + i);
+        }
+        this.jedis.rpush("test:list:other", "a", "b", "c");
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class SliceContainer {
+
+        @Redis("test:list")
+        private List<String> wholeList;
+
+        @Redis(value = "test:list", start = 2, end = 4)
+        private List<String> listRange;
+
+        @Redis(value = "test:list", start = -2)
+        private List<String> listTail;
+
+        @Redis(value = "test:zset", start = 0, end = 2, reverse = true)
+        private List<String> topMembers;
+
+        @Redis(value = "test:zset", minScore = "3", maxScore = "(6")
+        private Set<String> membersByScore;
+
+        @Redis(value = "test:zset", minScore = "3", maxScore = "(6", start = 1, end = 1)
+        private Set<String> limitedMembersByScore;
+
+        @Redis(value = "test:zset", minScore = "7", reverse = true)
+        private List<String> reversedMembersByScore;
+
+        @Redis("test:zset")
+        private SortedMap<String, Double> scores;
+
+        @Redis(value = "test:zset", start = 0, end = 1, reverse = true)
+        private Map<String, Double> topScores;
+
+        @Redis(value = "test:list*", end = 0)
+        private Map<String, List<String>> firstOfLists;
+    }
+
+    @Test
+    public void test_that_slices_are_injected() {
+        SliceContainer container = this.injector.getInstance(SliceContainer.class);
+        assertThat(container.wholeList, is(equalTo((List<String>) ImmutableList.of(
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9"))));
+        assertThat(container.listRange, is(equalTo((List<String>) ImmutableList.of("2", "3", "4"))));
+        assertThat(container.listTail, is(equalTo((List<String>) ImmutableList.of("8", "9"))));
+        assertThat(container.topMembers, is(equalTo((List<String>) ImmutableList.of(
+            "member_9", "member_8", "member_7"))));
+        assertThat(container.membersByScore, is(equalTo((Set<String>) ImmutableSet.of(
+            "member_3", "member_4", "member_5"))));
+        assertThat(container.limitedMembersByScore, is(equalTo((Set<String>) ImmutableSet.of("member_4"))));
+        assertThat(container.reversedMembersByScore, is(equalTo((List<String>) ImmutableList.of(
+            "member_9", "member_8", "member_7"))));
+        assertThat(container.firstOfLists, is(equalTo((Map<String, List<String>>) ImmutableMap.<String, List<String>>of(
+            "test:list", ImmutableList.of("0"), "test:list:other", ImmutableList.of("a")))));
+    }
+
+    @Test
+    public void test_that_scores_are_injected() {
+        SliceContainer container = this.injector.getInstance(SliceContainer.class);
+        ImmutableSortedMap.Builder<String, Double> expected = ImmutableSortedMap.naturalOrder();
+        for (int i = 0; i < 10; ++i) {
+            expected.put("member_" + i, (double) i);
+        }
+        assertThat(container.scores, is(equalTo((SortedMap<String, Double>) expected.build())));
+        assertThat(container.topScores, is(equalTo((Map<String, Double>) ImmutableMap.of(
+            "member_9", 9.0, "member_8", 8.0))));
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class SnapshotTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private File file;
+    private Jedis jedis;
+
+    @Before
+    public void setup() throws IOException {
+        this.file = File.createTempFile("strawberry", ".snapshot");
+        this.file.delete();
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        this.file.delete();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static Injector injectorOf(final RedisModule module) {
+        return Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                install(module);
+            }
+        });
+    }
+
+
+
+    public static class SnapshotContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:bytes")
+        private byte[] injectedBytes;
+
+        @Redis("test:hash")
+        private Map<String, String> injectedHash;
+
+        @Redis("test:list")
+        private List<String> injectedList;
+
+        @Redis("test:set")
+        private Set<String> injectedSet;
+
+        @Redis("test:pattern:*")
+        private Map<String, String> injectedPattern;
+
+        @Redis("test:missing")
+        private String injectedMissing;
+    }
+
+    private void populate(String suffix) {
+        this.jedis.set("test:string", "string" + suffix);
+        this.jedis.set("test:bytes", "bytes" + suffix);
+        this.jedis.hset("test:hash", "field", "hash" + suffix);
+        this.jedis.del("test:list", "test:set");
+        this.jedis.rpush("test:list", "list" + suffix, "list");
+        this.jedis.sadd("test:set", "set" + suffix);
+        this.jedis.set("test:pattern:a", "a" + suffix);
+        this.jedis.set("test:pattern:b", "b" + suffix);
+    }
+
+    private static void assertValues(SnapshotContainer dummy, String suffix) {
+        assertThat(dummy.injectedString, is(equalTo("string" + suffix)));
+        assertThat(new String(dummy.injectedBytes), is(equalTo("bytes" + suffix)));
+        assertThat(dummy.injectedHash, is(equalTo((Map<String, String>) ImmutableMap.of("field", "hash" + suffix))));
+        assertThat(dummy.injectedList, is(equalTo((List<String>) ImmutableList.of("list" + suffix, "list"))));
+        assertThat(dummy.injectedSet, is(equalTo((Set<String>) ImmutableSet.of("set" + suffix))));
+        assertThat(dummy.injectedPattern, is(equalTo((Map<String, String>) ImmutableMap.of(
+            "test:pattern:a", "a" + suffix, "test:pattern:b", "b" + suffix))));
+        assertThat(dummy.injectedMissing, is(nullValue()));
+    }
+
+    private static boolean hasValues(SnapshotContainer dummy, String suffix) {
+        try {
+            assertValues(dummy, suffix);
+            return true;
+        } catch (AssertionError e) {
+            return false;
+        }
+    }
+
+    private void saveSnapshot() {
+        populate("_old");
+        RedisModule module = RedisModule.builder(this.pool).snapshot(this.file).build();
+        assertValues(injectorOf(module).getInstance(SnapshotContainer.class), "_old");
+        module.close();
+        assertThat(this.file.isFile(), is(true));
+    }
+
+    @Test
+    public void test_that_fields_are_served_from_snapshot_without_redis() {
+        saveSnapshot();
+
+        // Nothing is listening on this port, so all values must come from the
+        // snapshot.
+        JedisPool unavailable = new JedisPool("localhost", 6390);
+        RedisModule module = RedisModule.builder(unavailable).snapshot(this.file).build();
+        assertValues(injectorOf(module).getInstance(SnapshotContainer.class), "_old");
+        unavailable.destroy();
+    }
+
+    @Test
+    public void test_that_fields_are_served_from_snapshot_only_once() {
+        saveSnapshot();
+        populate("_new");
+
+        RedisModule module = RedisModule.builder(this.pool).snapshot(this.file).build();
+        Injector injector = injectorOf(module);
+        assertValues(injector.getInstance(SnapshotContainer.class), "_old");
+        assertValues(injector.getInstance(SnapshotContainer.class), "_new");
+        module.close();
+
+        // The new values were written to the snapshot.
+        JedisPool unavailable = new JedisPool("localhost", 6390);
+        module = RedisModule.builder(unavailable).snapshot(this.file).build();
+        assertValues(injectorOf(module).getInstance(SnapshotContainer.class), "_new");
+        unavailable.destroy();
+    }
+
+    @Test
+    public void test_that_cached_snapshot_values_are_revalidated() throws InterruptedException {
+        saveSnapshot();
+        populate("_new");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RedisModule module = RedisModule.builder(this.pool).
+            refreshAfterWrite(1, TimeUnit.MINUTES, executor).
+            snapshot(this.file).
+            build();
+        try {
+            Injector injector = injectorOf(module);
+            SnapshotContainer dummy = injector.getInstance(SnapshotContainer.class);
+            assertValues(dummy, "_old");
+
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!hasValues(dummy, "_new") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                dummy = injector.getInstance(SnapshotContainer.class);
+            }
+            assertValues(dummy, "_new");
+        } finally {
+            module.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_that_revalidated_values_are_kept_without_refresh() throws InterruptedException {
+        saveSnapshot();
+        populate("_new");
+
+        RedisModule module = RedisModule.builder(this.pool).
+            invalidateOnChange().
+            snapshot(this.file).
+            build();
+        try {
+            // A load that is underway when the notifier subscribes is retried
+            // from Redis, so the snapshot is only served after that.
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (this.jedis.pubsubNumPat() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Injector injector = injectorOf(module);
+            SnapshotContainer dummy = injector.getInstance(SnapshotContainer.class);
+            assertValues(dummy, "_old");
+
+            while (!hasValues(dummy, "_new") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                dummy = injector.getInstance(SnapshotContainer.class);
+            }
+            assertValues(dummy, "_new");
+        } finally {
+            module.close();
+        }
+    }
+
+    public static class ScalarContainer {
+
+        @Redis("test:shared:*")
+        private String injectedScalar;
+    }
+
+    public static class SharedContainer {
+
+        @Redis("test:shared:*")
+        private String injectedScalar;
+
+        @Redis("test:shared:*")
+        private List<String> injectedList;
+    }
+
+    @Test
+    public void test_that_scalar_and_aggregate_fields_are_kept_apart() {
+        this.jedis.set("test:shared:a", "a_old");
+        RedisModule module = RedisModule.builder(this.pool).snapshot(this.file).build();
+        assertThat(injectorOf(module).getInstance(ScalarContainer.class).injectedScalar, is(equalTo("a_old")));
+        module.close();
+
+        // Only the scalar field was recorded, so the list is loaded from Redis.
+        this.jedis.set("test:shared:a", "a_new");
+        this.jedis.set("test:shared:b", "b_new");
+        module = RedisModule.builder(this.pool).snapshot(this.file).build();
+        SharedContainer dummy = injectorOf(module).getInstance(SharedContainer.class);
+        assertThat(dummy.injectedScalar, is(equalTo("a_old")));
+        assertThat(dummy.injectedList, is(equalTo((List<String>) ImmutableList.of("a_new", "b_new"))));
+        module.close();
+
+        // Both fields are served from the snapshot, each in its own shape.
+        JedisPool unavailable = new JedisPool("localhost", 6390);
+        module = RedisModule.builder(unavailable).snapshot(this.file).build();
+        dummy = injectorOf(module).getInstance(SharedContainer.class);
+        assertThat(dummy.injectedScalar, is(equalTo("a_old")));
+        assertThat(dummy.injectedList, is(equalTo((List<String>) ImmutableList.of("a_new", "b_new"))));
+        unavailable.destroy();
+    }
+
+    @Test
+    public void test_that_corrupt_snapshot_is_ignored() throws IOException {
+        FileOutputStream output = new FileOutputStream(this.file);
+        output.write(new byte[]{'S', 'T', 'R', 'B', 0, 0, 0, 2, 0, 0, 0, 9});
+        output.close();
+        populate("_new");
+
+        RedisModule module = RedisModule.builder(this.pool).snapshot(this.file).build();
+        assertValues(injectorOf(module).getInstance(SnapshotContainer.class), "_new");
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ * Tests that cached values are invalidated when the version key changes (see
+ * {@link RedisModule.Builder#pollVersion(String, long, TimeUnit)}).
+ *
+ * @author Wiehann Matthysen
+ */
+public class VersionPollingTest extends AbstractModule {
+
+    private static final long TIMEOUT = 5000;
+    private static final long INTERVAL = 50;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private RedisModule module;
+    private Injector injector;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+    }
+
+    @Before
+    public void setup() {
+        this.jedis = this.pool.getResource();
+        this.jedis.set("test:__version", "1");
+        this.module = RedisModule.builder(this.pool)
+            .pollVersion("test:__version", INTERVAL, TimeUnit.MILLISECONDS)
+            .build();
+        this.injector = Guice.createInjector(this);
+    }
+
+    @After
+    public void teardown() {
+        this.module.close();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class VersionedContainer {
+
+        @Redis("test:config:host")
+        private String host;
+
+        @Redis("test:config:port")
+        private int port;
+    }
+
+    @Test
+    public void test_that_values_are_cached_until_the_version_changes() throws InterruptedException {
+        this.jedis.set("test:config:host", "localhost");
+        this.jedis.set("test:config:port", "6379");
+        VersionedContainer container = this.injector.getInstance(VersionedContainer.class);
+        assertThat(container.host, is(equalTo("localhost")));
+        assertThat(container.port, is(6379));
+
+        // Without a change of version, the cached values should be injected.
+        this.jedis.set("test:config:host", "example.com");
+        this.jedis.set("test:config:port", "6380");
+        Thread.sleep(INTERVAL * 4);
+        container = this.injector.getInstance(VersionedContainer.class);
+        assertThat(container.host, is(equalTo("localhost")));
+        assertThat(container.port, is(6379));
+
+        this.jedis.incr("test:__version");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!"example.com".equals(container.host) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            container = this.injector.getInstance(VersionedContainer.class);
+        }
+        assertThat(container.host, is(equalTo("example.com")));
+        assertThat(container.port, is(6380));
+    }
+
+    @Test
+    public void test_that_values_are_invalidated_when_the_version_key_is_deleted() throws InterruptedException {
+        this.jedis.set("test:config:host", "localhost");
+        VersionedContainer container = this.injector.getInstance(VersionedContainer.class);
+        assertThat(container.host, is(equalTo("localhost")));
+        this.jedis.set("test:config:host", "example.com");
+        this.jedis.del("test:__version");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!"example.com".equals(container.host) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            container = this.injector.getInstance(VersionedContainer.class);
+        }
+        assertThat(container.host, is(equalTo("example.com")));
+    }
+}
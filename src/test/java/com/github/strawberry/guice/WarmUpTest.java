@@ -0,0 +1,120 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice;
+
+import java.lang.reflect.Field;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.redis.RedisLoader;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class WarmUpTest extends AbstractModule {
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private LoadingCache<Field, Option> cache;
+    private RedisModule module;
+    private Jedis jedis;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+        bind(FirstContainer.class);
+        bind(SecondContainer.class);
+    }
+
+    @Before
+    public void setup() {
+        this.cache = CacheBuilder.newBuilder().recordStats().build(new RedisLoader(this.pool));
+        this.module = new RedisModule(this.cache).warmUp(2, 2);
+        this.jedis = this.pool.getResource();
+    }
+
+    @After
+    public void teardown() {
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.pool.returnResource(this.jedis);
+    }
+
+
+
+    public static class FirstContainer {
+
+        @Redis("test:first")
+        private String first;
+
+        @Redis("test:second")
+        private String second;
+    }
+
+    public static class SecondContainer {
+
+        @Redis("test:third")
+        private String third;
+    }
+
+    @Test
+    public void test_that_bound_fields_are_loaded_while_creating_injector() {
+        this.jedis.set("test:first", "first_value");
+        this.jedis.set("test:second", "second_value");
+        this.jedis.set("test:third", "third_value");
+        assertThat(this.module.warmUpReport(), is(nullValue()));
+
+        Injector injector = Guice.createInjector(Stage.PRODUCTION, this);
+        WarmUpReport report = this.module.warmUpReport();
+        assertThat(report.fields(), is(equalTo(3)));
+        assertThat(report.batches(), is(equalTo(2)));
+        assertThat(report.failures(), is(equalTo(0)));
+        assertThat(this.cache.size(), is(equalTo(3L)));
+
+        // The values are served from the warmed-up cache.
+        this.jedis.set("test:first", "new_value");
+        FirstContainer first = injector.getInstance(FirstContainer.class);
+        assertThat(first.first, is(equalTo("first_value")));
+        assertThat(first.second, is(equalTo("second_value")));
+        SecondContainer second = injector.getInstance(SecondContainer.class);
+        assertThat(second.third, is(equalTo("third_value")));
+        assertThat(this.cache.stats().missCount(), is(equalTo(3L)));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.guice.config;
+
+import java.lang.reflect.Field;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Config;
+import com.github.strawberry.guice.ConfigModule;
+import com.github.strawberry.guice.WarmUpReport;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.LoadingCache;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import fj.data.Option;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class WarmUpTest extends AbstractModule {
+
+    private final Properties properties = new Properties();
+    private LoadingCache<Field, Option> cache;
+    private ConfigModule module;
+
+    @Override
+    protected void configure() {
+        install(this.module);
+        bind(ConfigContainer.class);
+    }
+
+    @Before
+    public void setup() {
+        this.cache = CacheBuilder.newBuilder().build(new ConfigLoader(this.properties));
+        this.module = new ConfigModule(this.cache).warmUp(10, 1);
+    }
+
+
+
+    public static class ConfigContainer {
+
+        @Config("test:string")
+        private String injectedString;
+
+        @Config("test:integer")
+        private Integer injectedInteger;
+    }
+
+    @Test
+    public void test_that_bound_fields_are_loaded_while_creating_injector() {
+        this.properties.put("test:string", "test_value");
+        this.properties.put("test:integer", "42");
+
+        Injector injector = Guice.createInjector(this);
+        WarmUpReport report = this.module.warmUpReport();
+        assertThat(report.fields(), is(equalTo(2)));
+        assertThat(report.batches(), is(equalTo(1)));
+        assertThat(this.cache.size(), is(equalTo(2L)));
+
+        this.properties.put("test:string", "new_value");
+        ConfigContainer dummy = injector.getInstance(ConfigContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("test_value")));
+        assertThat(dummy.injectedInteger, is(equalTo(42)));
+    }
+
+    @Test
+    public void test_that_warm_up_is_skipped_without_caching() {
+        this.properties.put("test:string", "test_value");
+        this.module = new ConfigModule(this.properties).warmUp(10, 1);
+
+        Injector injector = Guice.createInjector(this);
+        assertThat(this.module.warmUpReport(), is(nullValue()));
+
+        this.properties.put("test:string", "new_value");
+        ConfigContainer dummy = injector.getInstance(ConfigContainer.class);
+        assertThat(dummy.injectedString, is(equalTo("new_value")));
+    }
+}
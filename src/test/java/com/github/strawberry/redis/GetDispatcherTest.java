@@ -0,0 +1,170 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class GetDispatcherTest {
+
+    private final AtomicInteger mgets = new AtomicInteger();
+    private final F<List<String>, List<byte[]>> mget = new F<List<String>, List<byte[]>>() {
+
+        @Override
+        public List<byte[]> f(List<String> keys) {
+            mgets.incrementAndGet();
+            List<byte[]> values = Lists.newArrayList();
+            for (String key : keys) {
+                values.add(key.startsWith("missing") ? null : ("value_of_" + key).getBytes(NumberParser.CHARSET));
+            }
+            return values;
+        }
+    };
+
+    private ExecutorService executor;
+    private JedisPool pool;
+
+    @Before
+    public void setup() {
+        this.executor = Executors.newCachedThreadPool();
+        this.pool = new JedisPool("localhost", 6379);
+    }
+
+    @After
+    public void teardown() {
+        this.executor.shutdownNow();
+        Jedis jedis = this.pool.getResource();
+        for (String key : jedis.keys("test:*")) {
+            jedis.del(key);
+        }
+        this.pool.returnResource(jedis);
+        this.pool.destroy();
+    }
+
+    private List<Future<Map<String, byte[]>>> getConcurrently(final GetDispatcher dispatcher, int threads) {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, byte[]>>> results = Lists.newArrayList();
+        for (int i = 0; i < threads; ++i) {
+            final String key = i % 2 == 0 ? "key_" + i : "missing_" + i;
+            results.add(this.executor.submit(new Callable<Map<String, byte[]>>() {
+
+                @Override
+                public Map<String, byte[]> call() throws Exception {
+                    start.await();
+                    return dispatcher.get(ImmutableList.of(key));
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    @Test
+    public void test_that_concurrent_gets_are_batched() throws Exception {
+        GetDispatcher dispatcher = new GetDispatcher(this.mget, TimeUnit.MILLISECONDS.toNanos(50), 1000);
+        List<Future<Map<String, byte[]>>> results = getConcurrently(dispatcher, 20);
+        for (int i = 0; i < results.size(); ++i) {
+            Map<String, byte[]> values = results.get(i).get();
+            if (i % 2 == 0) {
+                assertThat(new String(values.get("key_" + i), NumberParser.CHARSET), is(equalTo("value_of_key_" + i)));
+            } else {
+                assertThat(values.containsKey("missing_" + i), is(true));
+                assertThat(values.get("missing_" + i), is(nullValue()));
+            }
+        }
+        assertThat(this.mgets.get() < 20, is(true));
+    }
+
+    @Test
+    public void test_that_full_window_is_read_without_waiting() throws Exception {
+        GetDispatcher dispatcher = new GetDispatcher(this.mget, TimeUnit.SECONDS.toNanos(10), 2);
+        long start = System.nanoTime();
+        for (Future<Map<String, byte[]>> result : getConcurrently(dispatcher, 2)) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        Map<String, byte[]> values = dispatcher.get(ImmutableList.of("key_a", "key_b", "key_c"));
+        assertThat(values.size(), is(3));
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, is(true));
+    }
+
+
+
+    public static class BatchedContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+
+        @Redis("test:integer")
+        private int injectedInteger;
+
+        @Redis(value = "test:missing", allowNull = false)
+        private String injectedMissing;
+
+        @Redis("test:list")
+        private List<String> injectedList;
+    }
+
+    @Test
+    public void test_that_fields_are_injected_through_batched_gets() {
+        Jedis jedis = this.pool.getResource();
+        jedis.set("test:string", "test_value");
+        jedis.set("test:integer", "42");
+        jedis.rpush("test:list", "a", "b");
+        this.pool.returnResource(jedis);
+
+        Injector injector = Guice.createInjector(RedisModule.builder(this.pool).
+            batchGets(1, TimeUnit.MILLISECONDS, 100).build());
+        BatchedContainer container = injector.getInstance(BatchedContainer.class);
+        assertThat(container.injectedString, is(equalTo("test_value")));
+        assertThat(container.injectedInteger, is(42));
+        assertThat(container.injectedMissing, is(equalTo("")));
+        assertThat(container.injectedList, is(equalTo((List<String>) ImmutableList.of("a", "b"))));
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class KeyPatternTest {
+
+    public static class PatternContainer {
+
+        @Redis("test:string")
+        private String firstString;
+
+        @Redis("test:string")
+        private String secondString;
+    }
+
+    @Test
+    public void test_that_pattern_without_metacharacters_is_literal() {
+        assertThat(KeyPattern.of("test:string").isLiteral(), is(true));
+        assertThat(KeyPattern.of("test:string").pattern(), is(equalTo("test:string")));
+    }
+
+    @Test
+    public void test_that_patterns_are_parsed_only_once_per_field() throws NoSuchFieldException {
+        KeyPatterns patterns = new KeyPatterns();
+        KeyPattern first = patterns.of(PatternContainer.class.getDeclaredField("firstString"));
+        assertThat(patterns.of(PatternContainer.class.getDeclaredField("firstString")), is(sameInstance(first)));
+        assertThat(patterns.of(PatternContainer.class.getDeclaredField("secondString")), is(not(sameInstance(first))));
+        assertThat(new KeyPatterns().of(PatternContainer.class.getDeclaredField("firstString")),
+            is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void test_that_pattern_with_metacharacters_is_not_literal() {
+        assertThat(KeyPattern.of("test:*").isLiteral(), is(false));
+        assertThat(KeyPattern.of("test:?").isLiteral(), is(false));
+        assertThat(KeyPattern.of("test:[ab]").isLiteral(), is(false));
+        assertThat(KeyPattern.of("test:\\*").isLiteral(), is(false));
+    }
+
+    @Test
+    public void test_that_literal_pattern_matches_only_itself() {
+        assertThat(KeyPattern.of("test:string").matches("test:string"), is(true));
+        assertThat(KeyPattern.of("test:string").matches("test:string:01"), is(false));
+    }
+
+    @Test
+    public void test_that_glob_pattern_matches_like_redis() {
+        assertThat(KeyPattern.of("test:*").matches("test:"), is(true));
+        assertThat(KeyPattern.of("test:*").matches("test:string:01"), is(true));
+        assertThat(KeyPattern.of("test:*").matches("other:string"), is(false));
+        assertThat(KeyPattern.of("test:*:01").matches("test:string:01"), is(true));
+        assertThat(KeyPattern.of("test:*:01").matches("test:string:02"), is(false));
+        assertThat(KeyPattern.of("test:?").matches("test:a"), is(true));
+        assertThat(KeyPattern.of("test:?").matches("test:ab"), is(false));
+        assertThat(KeyPattern.of("test:[ab]").matches("test:b"), is(true));
+        assertThat(KeyPattern.of("test:[ab]").matches("test:c"), is(false));
+        assertThat(KeyPattern.of("test:[^ab]").matches("test:c"), is(true));
+        assertThat(KeyPattern.of("test:[a-c]").matches("test:b"), is(true));
+        assertThat(KeyPattern.of("test:[a-c]").matches("test:d"), is(false));
+        assertThat(KeyPattern.of("test:\\*").matches("test:*"), is(true));
+        assertThat(KeyPattern.of("test:\\*").matches("test:a"), is(false));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class KeyspaceNotifierTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private KeyspaceNotifier notifier;
+    private Jedis jedis;
+
+    @Before
+    public void setup() {
+        this.jedis = this.pool.getResource();
+        this.jedis.configSet("notify-keyspace-events", "KA");
+        this.notifier = new KeyspaceNotifier(this.pool);
+    }
+
+    @After
+    public void teardown() {
+        this.notifier.stop();
+        for (String key : this.jedis.keys("test:*")) {
+            this.jedis.del(key);
+        }
+        this.jedis.configSet("notify-keyspace-events", "");
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static void await(List<String> keys, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (keys.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void test_that_failing_listener_does_not_stop_notifications() throws InterruptedException {
+        final List<String> keys = Lists.newCopyOnWriteArrayList();
+        this.notifier.addListener(new KeyspaceNotifier.Listener() {
+
+            @Override
+            public void changed(String key) {
+                throw new IllegalStateException(key);
+            }
+
+            @Override
+            public void reset() {
+                throw new IllegalStateException();
+            }
+        }).addListener(new KeyspaceNotifier.Listener() {
+
+            @Override
+            public void changed(String key) {
+                keys.add(key);
+            }
+
+            @Override
+            public void reset() {}
+        }).start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!this.notifier.isSubscribed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        this.jedis.set("test:first", "value");
+        await(keys, 1);
+        this.jedis.set("test:second", "value");
+        await(keys, 2);
+        assertThat(keys.contains("test:first"), is(true));
+        assertThat(keys.contains("test:second"), is(true));
+        assertThat(this.notifier.isSubscribed(), is(true));
+    }
+
+    @Test
+    public void test_that_failed_subscription_is_retried() throws InterruptedException {
+        final AtomicInteger attempts = new AtomicInteger();
+        JedisPool failing = destroyOnShutdown(new JedisPool("localhost", 6379) {
+
+            @Override
+            public Jedis getResource() {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new JedisDataException("ERR unknown command");
+                }
+                return super.getResource();
+            }
+        });
+        this.notifier = new KeyspaceNotifier(failing);
+        this.notifier.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!this.notifier.isSubscribed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(this.notifier.isSubscribed(), is(true));
+        assertThat(attempts.get(), is(2));
+    }
+}
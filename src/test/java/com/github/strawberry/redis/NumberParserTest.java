@@ -0,0 +1,122 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class NumberParserTest {
+
+    private static final String[] INPUTS = {
+        "0", "-0", "+0", "1", "-1", "+1", "007", "127", "-128", "128", "32767", "-32769",
+        "2147483647", "-2147483648", "2147483648", "9223372036854775807", "-9223372036854775808",
+        "9223372036854775808", "123456789012345678901234567890",
+        "0.1", "-0.1", "1.5", "3.14159", "-0.0", "1.", ".5", "-.5", "7.50", "0.30000000000000004",
+        "9007199254740993", "1.7976931348623157", "123456.789012", "16777217", "0.1234567891",
+        "1e10", "1E-3", " 1", "1 ", "", "-", "+", ".", "1.2.3", "abc", "0x10", "NaN", "Infinity", "1_000"
+    };
+
+    private static final Class<?>[] TYPES = {
+        byte.class, short.class, int.class, long.class, BigInteger.class,
+        float.class, double.class, BigDecimal.class
+    };
+
+    private static final Object FAILED = new Object();
+
+    private static Object parse(Class<?> type, byte[] bytes) {
+        try {
+            if (type.equals(byte.class)) {
+                return NumberParser.parseByte(bytes);
+            } else if (type.equals(short.class)) {
+                return NumberParser.parseShort(bytes);
+            } else if (type.equals(int.class)) {
+                return NumberParser.parseInt(bytes);
+            } else if (type.equals(long.class)) {
+                return NumberParser.parseLong(bytes);
+            } else if (type.equals(BigInteger.class)) {
+                return NumberParser.parseBigInteger(bytes);
+            } else if (type.equals(float.class)) {
+                return NumberParser.parseFloat(bytes);
+            } else if (type.equals(double.class)) {
+                return NumberParser.parseDouble(bytes);
+            } else {
+                return NumberParser.parseBigDecimal(bytes);
+            }
+        } catch (NumberFormatException e) {
+            return FAILED;
+        }
+    }
+
+    private static Object parse(Class<?> type, String string) {
+        try {
+            if (type.equals(byte.class)) {
+                return Byte.parseByte(string);
+            } else if (type.equals(short.class)) {
+                return Short.parseShort(string);
+            } else if (type.equals(int.class)) {
+                return Integer.parseInt(string);
+            } else if (type.equals(long.class)) {
+                return Long.parseLong(string);
+            } else if (type.equals(BigInteger.class)) {
+                return new BigInteger(string);
+            } else if (type.equals(float.class)) {
+                return Float.parseFloat(string);
+            } else if (type.equals(double.class)) {
+                return Double.parseDouble(string);
+            } else {
+                return new BigDecimal(string);
+            }
+        } catch (NumberFormatException e) {
+            return FAILED;
+        }
+    }
+
+    private static void assertParsedLikeJdk(String input) {
+        byte[] bytes = input.getBytes(NumberParser.CHARSET);
+        for (Class<?> type : TYPES) {
+            assertThat(type + " " + input, parse(type, bytes), is(equalTo(parse(type, input))));
+        }
+    }
+
+    @Test
+    public void test_that_numbers_are_parsed_like_jdk() {
+        for (String input : INPUTS) {
+            assertParsedLikeJdk(input);
+        }
+    }
+
+    @Test
+    public void test_that_random_decimals_are_parsed_like_jdk() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            long unscaled = random.nextLong() % (random.nextBoolean() ? 1000000L : 10000000000000000L);
+            assertParsedLikeJdk(BigDecimal.valueOf(unscaled, random.nextInt(20)).toPlainString());
+        }
+    }
+}
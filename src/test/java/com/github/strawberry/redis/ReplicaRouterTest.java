@@ -0,0 +1,220 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import fj.F;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the routing of reads across replicas against a separate
+ * {@code redis-server} process (standing in for a replica) that is started on
+ * a different port. These tests are skipped if {@code redis-server} is not
+ * available.
+ *
+ * @author Wiehann Matthysen
+ */
+public class ReplicaRouterTest {
+
+    private static final int REPLICA_PORT = 6391;
+    private static final int UNAVAILABLE_PORT = 6390;
+
+    private static Process replicaProcess;
+
+    private final JedisPool primary = new JedisPool("localhost", 6379);
+    private final JedisPool replica = new JedisPool("localhost", REPLICA_PORT);
+    private final JedisPool unavailable = new JedisPool("localhost", UNAVAILABLE_PORT);
+
+    @BeforeClass
+    public static void startReplica() throws InterruptedException {
+        try {
+            replicaProcess = new ProcessBuilder(
+                "redis-server", "--port", String.valueOf(REPLICA_PORT), "--save", "").start();
+        } catch (IOException e) {
+            Assume.assumeTrue(false);
+        }
+        for (int i = 0; i < 100; ++i) {
+            try {
+                Jedis jedis = new Jedis("localhost", REPLICA_PORT);
+                jedis.ping();
+                jedis.disconnect();
+                return;
+            } catch (JedisConnectionException e) {
+                Thread.sleep(50);
+            }
+        }
+        Assume.assumeTrue(false);
+    }
+
+    @AfterClass
+    public static void stopReplica() {
+        if (replicaProcess != null) {
+            replicaProcess.destroy();
+        }
+    }
+
+    @Before
+    public void setup() {
+        Jedis jedis = this.primary.getResource();
+        jedis.set("test:string", "primary");
+        this.primary.returnResource(jedis);
+        jedis = this.replica.getResource();
+        jedis.set("test:string", "replica");
+        this.replica.returnResource(jedis);
+    }
+
+    @After
+    public void teardown() {
+        Jedis jedis = this.primary.getResource();
+        jedis.del("test:string");
+        this.primary.returnResource(jedis);
+        this.primary.destroy();
+        this.replica.destroy();
+        this.unavailable.destroy();
+    }
+
+    private static Injector injectorOf(final RedisModule module) {
+        return Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                install(module);
+            }
+        });
+    }
+
+
+
+    public static class ReplicatedContainer {
+
+        @Redis("test:string")
+        private String injectedString;
+    }
+
+    @Test
+    public void test_that_fields_are_loaded_from_replica() {
+        Injector injector = injectorOf(RedisModule.builder(this.primary).replicas(this.replica).build());
+        assertThat(injector.getInstance(ReplicatedContainer.class).injectedString, is(equalTo("replica")));
+    }
+
+    @Test
+    public void test_that_unavailable_replicas_are_skipped() {
+        Injector injector = injectorOf(RedisModule.builder(this.primary).
+            replicas(this.unavailable, this.replica).build());
+        for (int i = 0; i < 3; ++i) {
+            assertThat(injector.getInstance(ReplicatedContainer.class).injectedString, is(equalTo("replica")));
+        }
+
+        injector = injectorOf(RedisModule.builder(this.primary).replicas(this.unavailable).build());
+        assertThat(injector.getInstance(ReplicatedContainer.class).injectedString, is(equalTo("primary")));
+    }
+
+    @Test
+    public void test_that_replicas_are_ordered_by_latency() {
+        ReplicaRouter router = new ReplicaRouter(this.primary, ImmutableList.of(this.unavailable, this.replica), 0);
+        List<ReplicaRouter.Node> candidates = router.candidates();
+        candidates.get(0).record(1000000, false);
+        candidates.get(1).record(1000, false);
+
+        candidates = router.candidates();
+        assertThat(candidates.get(0).pool(), is(sameInstance(this.replica)));
+        assertThat(candidates.get(1).pool(), is(sameInstance(this.unavailable)));
+        assertThat(candidates.get(2).pool(), is(sameInstance(this.primary)));
+    }
+
+    @Test
+    public void test_that_slow_read_is_hedged() throws IOException {
+        Injector injector = injectorOf(RedisModule.builder(this.primary).
+            replicas(this.replica).hedgeAfter(0.9).build());
+        // Record the latency of the replica. A read that happens to be slow
+        // while doing so may already be answered by the primary.
+        for (int i = 0; i < 20; ++i) {
+            injector.getInstance(ReplicatedContainer.class);
+        }
+
+        // Block the replica, so that the read is answered by the primary.
+        Socket socket = new Socket("localhost", REPLICA_PORT);
+        try {
+            OutputStream output = socket.getOutputStream();
+            output.write("DEBUG SLEEP 1\r\n".getBytes("UTF-8"));
+            output.flush();
+
+            long start = System.currentTimeMillis();
+            assertThat(injector.getInstance(ReplicatedContainer.class).injectedString, is(equalTo("primary")));
+            assertThat(System.currentTimeMillis() - start < 800, is(true));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void test_that_error_replies_are_not_retried_on_other_nodes() {
+        ReplicaRouter router = new ReplicaRouter(this.primary, ImmutableList.of(this.replica), 0);
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            router.read(new F<Jedis, String>() {
+
+                @Override
+                public String f(Jedis jedis) {
+                    attempts.incrementAndGet();
+                    return jedis.hget("test:string", "field");
+                }
+            });
+            fail();
+        } catch (JedisDataException e) {
+            assertThat(attempts.get(), is(1));
+        }
+        // The replica did respond, so it should not be charged a failure.
+        assertThat(router.candidates().get(0).average() < TimeUnit.SECONDS.toNanos(1), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_that_replicas_can_not_be_invalidated_on_change() {
+        RedisModule.builder(this.primary).replicas(this.replica).invalidateOnChange().build();
+    }
+}
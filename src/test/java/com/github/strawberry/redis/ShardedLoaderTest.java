@@ -0,0 +1,204 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.strawberry.guice.Redis;
+import com.github.strawberry.guice.RedisModule;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import fj.Effect;
+import fj.F;
+import fj.data.Option;
+
+import static com.github.strawberry.util.JedisUtil.using;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the loading of field values from a {@link ShardedJedisPool} of which
+ * the second shard is a separate {@code redis-server} process that is started
+ * on a different port. These tests are skipped if {@code redis-server} is not
+ * available.
+ *
+ * @author Wiehann Matthysen
+ */
+public class ShardedLoaderTest {
+
+    private static final int SHARD_PORT = 6392;
+    private static final int KEY_COUNT = 20;
+
+    private static Process shardProcess;
+
+    private ShardedJedisPool pool;
+
+    @BeforeClass
+    public static void startShard() throws InterruptedException {
+        try {
+            shardProcess = new ProcessBuilder(
+                "redis-server", "--port", String.valueOf(SHARD_PORT), "--save", "").start();
+        } catch (IOException e) {
+            Assume.assumeTrue(false);
+        }
+        for (int i = 0; i < 100; ++i) {
+            try {
+                Jedis jedis = new Jedis("localhost", SHARD_PORT);
+                jedis.ping();
+                jedis.disconnect();
+                return;
+            } catch (JedisConnectionException e) {
+                Thread.sleep(50);
+            }
+        }
+        Assume.assumeTrue(false);
+    }
+
+    @AfterClass
+    public static void stopShard() {
+        if (shardProcess != null) {
+            shardProcess.destroy();
+        }
+    }
+
+    @Before
+    public void setup() {
+        this.pool = new ShardedJedisPool(new GenericObjectPoolConfig(), ImmutableList.of(
+            new JedisShardInfo("localhost", 6379), new JedisShardInfo("localhost", SHARD_PORT)));
+        using(this.pool)._do(new Effect<ShardedJedis>() {
+
+            @Override
+            public void e(ShardedJedis jedis) {
+                jedis.set("test:sharded:literal", "literal");
+                for (int i = 0; i < KEY_COUNT; ++i) {
+                    jedis.set(keyOf(i), valueOf(i));
+                }
+            }
+        });
+    }
+
+    @After
+    public void teardown() {
+        using(this.pool)._do(new Effect<ShardedJedis>() {
+
+            @Override
+            public void e(ShardedJedis jedis) {
+                jedis.del("test:sharded:literal");
+                for (int i = 0; i < KEY_COUNT; ++i) {
+                    jedis.del(keyOf(i));
+                }
+            }
+        });
+        this.pool.destroy();
+    }
+
+    private static String keyOf(int i) {
+        return String.format("test:sharded:%02d", i);
+    }
+
+    private static String valueOf(int i) {
+        return String.format("%02d", i);
+    }
+
+    private static Injector injectorOf(final RedisModule module) {
+        return Guice.createInjector(new AbstractModule() {
+
+            @Override
+            protected void configure() {
+                install(module);
+            }
+        });
+    }
+
+
+
+    public static class ShardedContainer {
+
+        @Redis("test:sharded:literal")
+        private String injectedLiteral;
+
+        @Redis("test:sharded:[0-9]*")
+        private List<String> injectedValues;
+    }
+
+    private static List<String> expectedValues() {
+        List<String> values = Lists.newArrayList();
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            values.add(valueOf(i));
+        }
+        return values;
+    }
+
+    @Test
+    public void test_that_keys_are_spread_across_shards() {
+        Set<Integer> ports = using(this.pool)._do(new F<ShardedJedis, Set<Integer>>() {
+
+            @Override
+            public Set<Integer> f(ShardedJedis jedis) {
+                Set<Integer> ports = Sets.newHashSet();
+                for (int i = 0; i < KEY_COUNT; ++i) {
+                    ports.add(jedis.getShardInfo(keyOf(i)).getPort());
+                }
+                return ports;
+            }
+        });
+        assertThat(ports.size(), is(2));
+    }
+
+    @Test
+    public void test_that_sharded_fields_are_loaded() {
+        Injector injector = injectorOf(new RedisModule(this.pool));
+        ShardedContainer container = injector.getInstance(ShardedContainer.class);
+        assertThat(container.injectedLiteral, is(equalTo("literal")));
+        assertThat(container.injectedValues, is(equalTo(expectedValues())));
+    }
+
+    @Test
+    public void test_that_scripted_sharded_fields_are_loaded() {
+        RedisLoader loader = RedisLoader.builder(this.pool).strategy(RedisLoader.Strategy.SCRIPTED).build();
+        Injector injector = injectorOf(new RedisModule(
+            CacheBuilder.newBuilder().maximumSize(0).<Field, Option>build(loader)));
+        ShardedContainer container = injector.getInstance(ShardedContainer.class);
+        assertThat(container.injectedLiteral, is(equalTo("literal")));
+        assertThat(container.injectedValues, is(equalTo(expectedValues())));
+    }
+}
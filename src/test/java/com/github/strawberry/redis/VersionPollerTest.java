@@ -0,0 +1,100 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.redis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+import static com.github.strawberry.util.JedisUtil.destroyOnShutdown;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class VersionPollerTest {
+
+    private static final long TIMEOUT = 5000;
+    private static final long INTERVAL = 20;
+
+    private final JedisPool pool = destroyOnShutdown(new JedisPool("localhost", 6379));
+
+    private VersionPoller poller;
+    private Jedis jedis;
+
+    @Before
+    public void setup() {
+        this.jedis = this.pool.getResource();
+        this.jedis.set("test:__version", "1");
+        this.poller = new VersionPoller(this.pool, "test:__version", INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void teardown() {
+        this.poller.stop();
+        this.jedis.del("test:__version");
+        this.pool.returnResource(this.jedis);
+    }
+
+    private static void await(AtomicInteger resets, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (resets.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void test_that_failing_listener_does_not_stop_polling() throws InterruptedException {
+        final AtomicInteger resets = new AtomicInteger();
+        this.poller.addListener(new KeyspaceNotifier.Listener() {
+
+            @Override
+            public void changed(String key) {}
+
+            @Override
+            public void reset() {
+                throw new IllegalStateException();
+            }
+        }).addListener(new KeyspaceNotifier.Listener() {
+
+            @Override
+            public void changed(String key) {}
+
+            @Override
+            public void reset() {
+                resets.incrementAndGet();
+            }
+        }).start();
+
+        this.jedis.incr("test:__version");
+        await(resets, 1);
+        assertThat(resets.get(), is(1));
+        this.jedis.incr("test:__version");
+        await(resets, 2);
+        assertThat(resets.get(), is(2));
+    }
+}
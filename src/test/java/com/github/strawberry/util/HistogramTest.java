@@ -0,0 +1,71 @@
+/**
+ * Strawberry Library
+ * Copyright (C) 2011 - 2012
+ *
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library; if not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.strawberry.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ *
+ * @author Wiehann Matthysen
+ */
+public class HistogramTest {
+
+    @Test
+    public void test_that_empty_histogram_reports_zero() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.count(), is(equalTo(0L)));
+        assertThat(histogram.mean(TimeUnit.NANOSECONDS), is(equalTo(0L)));
+        assertThat(histogram.max(TimeUnit.NANOSECONDS), is(equalTo(0L)));
+        assertThat(histogram.percentile(0.99, TimeUnit.NANOSECONDS), is(equalTo(0L)));
+    }
+
+    @Test
+    public void test_that_mean_and_max_are_exact() {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+        histogram.record(300);
+        histogram.record(-5);
+        assertThat(histogram.count(), is(equalTo(3L)));
+        assertThat(histogram.mean(TimeUnit.NANOSECONDS), is(equalTo(133L)));
+        assertThat(histogram.max(TimeUnit.NANOSECONDS), is(equalTo(300L)));
+    }
+
+    @Test
+    public void test_that_percentile_is_within_power_of_two() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.record(1000);
+        }
+        histogram.record(1000000);
+        // 1000 falls in the bucket [512, 1024).
+        assertThat(histogram.percentile(0.5, TimeUnit.NANOSECONDS), is(equalTo(1023L)));
+        assertThat(histogram.percentile(0.99, TimeUnit.NANOSECONDS), is(equalTo(1023L)));
+        // The highest percentile is capped by the maximum.
+        assertThat(histogram.percentile(1.0, TimeUnit.NANOSECONDS), is(equalTo(1000000L)));
+
+        histogram.reset();
+        assertThat(histogram.count(), is(equalTo(0L)));
+        assertThat(histogram.percentile(0.5, TimeUnit.NANOSECONDS), is(equalTo(0L)));
+    }
+}
@@ -17,19 +17,31 @@
  */
 package com.github.strawberry.util;
 
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.ObjectName;
+
 import org.junit.Test;
 
+import com.google.common.collect.Sets;
+
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import fj.Effect;
 import fj.F;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import static com.github.strawberry.util.JedisUtil.scan;
 import static com.github.strawberry.util.JedisUtil.using;
 
 /**
@@ -52,7 +64,7 @@ public class JedisUtilTest {
         JedisPoolConfig config = new JedisPoolConfig();
         
         // Ensure that only a single connection is active in pool.
-        config.setMaxActive(1);
+        config.setMaxTotal(1);
         
         final JedisPool pool = new JedisPool(config, "localhost", 6379);
         
@@ -91,7 +103,7 @@ public class JedisUtilTest {
         JedisPoolConfig config = new JedisPoolConfig();
         
         // Ensure that only a single connection is active in pool.
-        config.setMaxActive(1);
+        config.setMaxTotal(1);
         
         final JedisPool pool = new JedisPool(config, "localhost", 6379);
         
@@ -135,4 +147,83 @@ public class JedisUtilTest {
         assertThat(connection, is(sameInstance(returnedConnection)));
         pool.returnResource(connection);
     }
+    
+    @Test
+    public void test_that_scan_iterates_over_all_matching_keys() {
+        JedisPool pool = new JedisPool("localhost", 6379);
+        Jedis jedis = pool.getResource();
+        try {
+            Set<String> expectedKeys = Sets.newHashSet();
+            for (int i = 0; i < 250; ++i) {
+                String key = String.format("test:scan:%s", i);
+                jedis.set(key, String.valueOf(i));
+                expectedKeys.add(key);
+            }
+            jedis.set("test:other", "value");
+            
+            // Use a small count to ensure that multiple batches are requested.
+            Set<String> actualKeys = Sets.newHashSet(scan(jedis, "test:scan:*", 10));
+            assertThat(actualKeys, is(equalTo(expectedKeys)));
+            
+            // Ensure that iteration can be restarted.
+            actualKeys = Sets.newHashSet(scan(jedis, "test:scan:*", 10));
+            assertThat(actualKeys, is(equalTo(expectedKeys)));
+            
+            // Ensure that nothing is returned if no key matches.
+            assertThat(scan(jedis, "test:missing:*", 10).iterator().hasNext(), is(false));
+        } finally {
+            for (String key : jedis.keys("test:*")) {
+                jedis.del(key);
+            }
+            pool.returnResource(jedis);
+            pool.destroy();
+        }
+    }
+
+    @Test
+    public void test_that_instrumented_pool_records_checkouts() throws Exception {
+        JedisPool pool = new JedisPool("localhost", 6379);
+        assertThat(JedisUtil.metricsOf(pool), is(nullValue()));
+        PoolMetrics metrics = JedisUtil.instrument(pool);
+        assertThat(JedisUtil.instrument(pool), is(sameInstance(metrics)));
+        assertThat(JedisUtil.metricsOf(pool), is(sameInstance(metrics)));
+
+        final PoolMetrics inside = metrics;
+        using(pool)._do(new Effect<Jedis>() {
+
+            @Override
+            public void e(Jedis jedis) {
+                assertThat(inside.getInFlight(), is(equalTo(1)));
+                jedis.ping();
+            }
+        });
+        try {
+            using(pool)._do(new Effect<Jedis>() {
+
+                @Override
+                public void e(Jedis jedis) {
+                    throw new JedisConnectionException("broken");
+                }
+            });
+            fail("Expected JedisConnectionException.");
+        } catch (JedisConnectionException e) {
+            // Expected.
+        }
+        assertThat(metrics.getCheckouts(), is(equalTo(2L)));
+        assertThat(metrics.getBrokenReturns(), is(equalTo(1L)));
+        assertThat(metrics.getInFlight(), is(equalTo(0)));
+        assertThat(metrics.getMaxInFlight(), is(equalTo(1)));
+        assertThat(metrics.checkoutWait().count(), is(equalTo(2L)));
+        assertThat(metrics.holdTime().count(), is(equalTo(2L)));
+
+        metrics.register("test");
+        try {
+            ObjectName name = new ObjectName("com.github.strawberry:type=JedisPool,name=\"test\"");
+            Object checkouts = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Checkouts");
+            assertThat(checkouts, is(equalTo((Object) 2L)));
+        } finally {
+            metrics.unregister();
+        }
+        pool.destroy();
+    }
 }